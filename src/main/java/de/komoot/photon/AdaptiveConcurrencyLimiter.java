@@ -0,0 +1,101 @@
+package de.komoot.photon;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * limits the number of requests running at once, the limit adapts to the observed latency.
+ * <p/>
+ * The limit is cut by {@link #BACKOFF_RATIO} when a request is slower than the latency target or fails, and grows additively by about one
+ * per limit's worth of fast requests while it is actually used (AIMD). Like tcp, the limit is cut at most once per window: the requests
+ * in flight when it was cut were admitted under the old limit, so their latency says nothing about the new one and they are not counted.
+ * Requests beyond the limit wait in a short bounded queue, the others are rejected at once.
+ */
+public class AdaptiveConcurrencyLimiter {
+    public static final int DEFAULT_SEARCH_LIMIT = 200;
+    public static final long DEFAULT_SEARCH_LATENCY_MILLIS = 1000;
+    public static final int DEFAULT_BULK_LIMIT = 8;
+    public static final long DEFAULT_BULK_LATENCY_MILLIS = 30000;
+    public static final long DEFAULT_QUEUE_TIMEOUT_MILLIS = 100;
+
+    static final double BACKOFF_RATIO = 0.9;
+    static final int MIN_LIMIT = 1;
+
+    private final int maxLimit;
+    private final long latencyTargetMillis;
+    private final int maxQueued;
+    private final long queueTimeoutMillis;
+
+    private double limit;
+    private int inFlight = 0;
+    private int queued = 0;
+    // requests still in flight from the window in which the limit was cut
+    private int recovering = 0;
+
+    /**
+     * @param maxLimit            upper bound and initial value of the limit
+     * @param latencyTargetMillis requests taking longer reduce the limit
+     * @param maxQueued           requests waiting for a free slot at most, further requests are rejected
+     * @param queueTimeoutMillis  time a request waits for a free slot before it is rejected
+     */
+    public AdaptiveConcurrencyLimiter(int maxLimit, long latencyTargetMillis, int maxQueued, long queueTimeoutMillis) {
+        this.maxLimit = Math.max(MIN_LIMIT, maxLimit);
+        this.latencyTargetMillis = latencyTargetMillis;
+        this.maxQueued = Math.max(0, maxQueued);
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.limit = this.maxLimit;
+    }
+
+    /**
+     * @return true if the request may run, it must call {@link #release} when done
+     */
+    public synchronized boolean acquire() throws InterruptedException {
+        if (inFlight < getLimit()) {
+            inFlight++;
+            return true;
+        }
+        if (queued >= maxQueued) {
+            return false;
+        }
+
+        queued++;
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+            while (inFlight >= getLimit()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            inFlight++;
+            return true;
+        } finally {
+            queued--;
+        }
+    }
+
+    /**
+     * @param latencyMillis time the request took
+     * @param success       false if the request failed because of the backend, not the client
+     */
+    public synchronized void release(long latencyMillis, boolean success) {
+        if (recovering > 0) {
+            recovering--;
+        } else if (!success || latencyMillis > latencyTargetMillis) {
+            limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+            recovering = inFlight - 1;
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        inFlight--;
+        notifyAll();
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
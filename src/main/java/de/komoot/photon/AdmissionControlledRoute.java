@@ -0,0 +1,88 @@
+package de.komoot.photon;
+
+import org.json.JSONObject;
+import spark.HaltException;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletResponse;
+
+import static spark.Spark.halt;
+
+/**
+ * runs a route only if its {@link AdaptiveConcurrencyLimiter} admits the request, other requests are answered with 503 at once.
+ * <p/>
+ * Requests continued asynchronously hold their slot until the response is complete.
+ */
+class AdmissionControlledRoute implements Route {
+    static final int RETRY_AFTER_SECONDS = 1;
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final Route route;
+
+    AdmissionControlledRoute(AdaptiveConcurrencyLimiter limiter, Route route) {
+        this.limiter = limiter;
+        this.route = route;
+    }
+
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        if (!limiter.acquire()) {
+            response.header("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+            halt(503, new JSONObject().put("message", "too many requests, try again later").toString());
+        }
+
+        final long startMillis = System.currentTimeMillis();
+        boolean success = false;
+        boolean async = false;
+        try {
+            Object body = route.handle(request, response);
+            success = response.raw().getStatus() < 500;
+            if (request.raw().isAsyncStarted()) {
+                request.raw().getAsyncContext().addListener(new ReleasingListener(startMillis));
+                async = true;
+            }
+            return body;
+        } catch (HaltException e) {
+            // e.g. bad requests, no sign of an overloaded backend
+            success = e.statusCode() < 500;
+            throw e;
+        } finally {
+            if (!async) {
+                limiter.release(System.currentTimeMillis() - startMillis, success);
+            }
+        }
+    }
+
+    private class ReleasingListener implements AsyncListener {
+        private final long startMillis;
+
+        ReleasingListener(long startMillis) {
+            this.startMillis = startMillis;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            boolean success = ((HttpServletResponse) event.getSuppliedResponse()).getStatus() < 500
+                    && event.getSuppliedRequest().getAttribute(AsyncGeoJsonResponder.FAILED_ATTRIBUTE) == null;
+            limiter.release(System.currentTimeMillis() - startMillis, success);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // followed by onComplete
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            // followed by onComplete
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
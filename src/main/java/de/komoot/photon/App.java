@@ -3,18 +3,30 @@ package de.komoot.photon;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
+import de.komoot.photon.elasticsearch.JsonImporter;
 import de.komoot.photon.elasticsearch.Server;
+import de.komoot.photon.nominatim.AddressCache;
+import de.komoot.photon.nominatim.ImportCheckpoint;
+import de.komoot.photon.nominatim.NominatimChangeListener;
 import de.komoot.photon.nominatim.NominatimConnector;
+import de.komoot.photon.nominatim.NominatimUpdateScheduler;
 import de.komoot.photon.nominatim.NominatimUpdater;
+import de.komoot.photon.query.ScoringMode;
+import de.komoot.photon.searcher.BaseElasticsearchSearcher;
+import de.komoot.photon.searcher.FallbackStrategy;
+import de.komoot.photon.searcher.SearchResultCache;
 import de.komoot.photon.utils.CorsFilter;
 import lombok.extern.slf4j.Slf4j;
 import org.elasticsearch.client.Client;
 import spark.Filter;
 import spark.Request;
 import spark.Response;
+import spark.Route;
 
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 import static spark.Spark.*;
 
@@ -31,6 +43,18 @@ public class App {
             if (args.isCorsAnyOrigin() && args.getCorsOrigin() != null) { // these are mutually exclusive
                 throw new ParameterException("Use only one cors configuration type");
             }
+            if (!"gzip".equals(args.getJsonCompression()) && !"none".equals(args.getJsonCompression())) {
+                throw new ParameterException("json compression must be gzip or none");
+            }
+            if (!NominatimUpdateScheduler.MODE_POLL.equals(args.getUpdateMode()) && !NominatimUpdateScheduler.MODE_INTERVAL.equals(args.getUpdateMode())) {
+                throw new ParameterException("update mode must be poll or interval");
+            }
+            if (FallbackStrategy.forName(args.getSearchFallback()) == null) {
+                throw new ParameterException("search fallback must be sequential, multi-search or deadline");
+            }
+            if (ScoringMode.forName(args.getSearchScoring()) == null) {
+                throw new ParameterException("search scoring must be script or native");
+            }
         } catch (ParameterException e) {
             log.warn("could not start photon: " + e.getMessage());
             jCommander.usage();
@@ -59,6 +83,12 @@ public class App {
                 return;
             }
 
+            if (args.getJsonImport() != null) {
+                shutdownES = true;
+                startJsonImport(args, esServer, esClient);
+                return;
+            }
+
             if (args.isNominatimImport()) {
                 shutdownES = true;
                 startNominatimImport(args, esServer, esClient);
@@ -95,18 +125,61 @@ public class App {
      * @param args
      */
     private static void startJsonDump(CommandLineArgs args) {
+        final String filename = args.getJsonDump();
+        final JsonDumper jsonDumper = new JsonDumper(filename, args.getLanguages(), "gzip".equals(args.getJsonCompression()),
+                args.getJsonChunkSize(), args.getJsonThreads());
+        NominatimConnector nominatimConnector = new NominatimConnector(args.getHost(), args.getPort(), args.getDatabase(), args.getUser(), args.getPassword());
+        nominatimConnector.setAddressBatchSize(args.getAddressBatchSize());
+        nominatimConnector.setAddressCache(new AddressCache(args.getAddressCacheSize()));
+        nominatimConnector.setImportThreads(args.getImportThreads());
+        nominatimConnector.setImporter(jsonDumper);
+        nominatimConnector.readEntireDatabase(args.getCountryCodes().split(","));
+        log.info("json dump was created: " + filename + JsonDumper.MANIFEST_SUFFIX);
+    }
+
+
+    /**
+     * load a json dump into a new index and switch the alias to it
+     *
+     * @param args
+     * @param esServer
+     * @param esNodeClient
+     */
+    private static void startJsonImport(CommandLineArgs args, Server esServer, Client esNodeClient) {
+        File path = new File(args.getJsonImport());
+        String indexName;
         try {
-            final String filename = args.getJsonDump();
-            final JsonDumper jsonDumper = new JsonDumper(filename, args.getLanguages());
-            NominatimConnector nominatimConnector = new NominatimConnector(args.getHost(), args.getPort(), args.getDatabase(), args.getUser(), args.getPassword());
-            nominatimConnector.setImporter(jsonDumper);
-            nominatimConnector.readEntireDatabase(args.getCountryCodes().split(","));
-            log.info("json dump was created: " + filename);
-        } catch (FileNotFoundException e) {
-            log.error("cannot create dump", e);
+            List<String> dumpLanguages = JsonImporter.getLanguages(path);
+            if (dumpLanguages != null && !dumpLanguages.equals(Arrays.asList(args.getLanguages().split(",")))) {
+                throw new RuntimeException("json dump contains the languages " + dumpLanguages + ", use the same -languages for the import");
+            }
+            indexName = esServer.createIndex();
+        } catch (IOException e) {
+            throw new RuntimeException("cannot read json dump " + path, e);
         }
-    }
 
+        log.info("loading json dump " + path + " into " + indexName);
+        de.komoot.photon.elasticsearch.Importer importer = new de.komoot.photon.elasticsearch.Importer(esNodeClient, indexName, args.getLanguages(),
+                args.getImportBulkConcurrency(), args.getImportBulkActions(), args.getImportBulkSize());
+        importer.setForceMergeSegments(args.getImportForceMerge());
+        importer.setReadOnlyAfterImport(args.isImportReadOnly());
+        long documents;
+        try {
+            documents = new JsonImporter(importer, args.getImportThreads()).load(path);
+        } catch (IOException e) {
+            throw new RuntimeException("cannot read json dump " + path, e);
+        }
+        if (importer.getAcknowledgedCount() < documents) {
+            throw new RuntimeException(String.format("only %d of %d documents were acknowledged, the alias is not switched to %s",
+                    importer.getAcknowledgedCount(), documents, indexName));
+        }
+
+        esServer.switchAlias(indexName);
+        if (args.isCleanupOldIndices()) {
+            esServer.deleteOldIndices(indexName);
+        }
+        log.info(String.format("loaded %d documents from json dump %s", documents, path));
+    }
 
     /**
      * take nominatim data to fill elastic search index
@@ -116,18 +189,62 @@ public class App {
      * @param esNodeClient
      */
     private static void startNominatimImport(CommandLineArgs args, Server esServer, Client esNodeClient) {
-        try {
-            esServer.recreateIndex(); // dump previous data
-        } catch (IOException e) {
-            throw new RuntimeException("cannot setup index, elastic search config files not readable", e);
+        File checkpointFile = ImportCheckpoint.getFile(args.getDataDirectory());
+        ImportCheckpoint checkpoint;
+        String indexName;
+        if (args.isResume()) {
+            try {
+                checkpoint = ImportCheckpoint.load(checkpointFile);
+            } catch (IOException e) {
+                throw new RuntimeException("cannot read import checkpoint " + checkpointFile, e);
+            }
+            if (checkpoint == null) {
+                throw new RuntimeException("cannot resume import, no checkpoint found at " + checkpointFile);
+            }
+            if (!checkpoint.matches(args.getLanguages(), args.getCountryCodes())) {
+                throw new RuntimeException(String.format("cannot resume import, it was started with languages '%s' and country codes '%s'",
+                        checkpoint.getLanguages(), checkpoint.getCountryCodes()));
+            }
+            indexName = checkpoint.getIndexName();
+            if (!esServer.indexExists(indexName)) {
+                throw new RuntimeException("cannot resume import, index " + indexName + " does not exist any more");
+            }
+            log.info("resuming import into " + indexName + " from checkpoint " + checkpointFile);
+        } else {
+            try {
+                // the previous index keeps serving until the import is complete
+                indexName = esServer.createIndex();
+            } catch (IOException e) {
+                throw new RuntimeException("cannot setup index, elastic search config files not readable", e);
+            }
+            checkpoint = new ImportCheckpoint(checkpointFile, indexName, args.getLanguages(), args.getCountryCodes());
         }
 
         log.info("starting import from nominatim to photon with languages: " + args.getLanguages());
-        de.komoot.photon.elasticsearch.Importer importer = new de.komoot.photon.elasticsearch.Importer(esNodeClient, args.getLanguages());
+        de.komoot.photon.elasticsearch.Importer importer = new de.komoot.photon.elasticsearch.Importer(esNodeClient, indexName, args.getLanguages(),
+                args.getImportBulkConcurrency(), args.getImportBulkActions(), args.getImportBulkSize());
+        importer.setForceMergeSegments(args.getImportForceMerge());
+        importer.setReadOnlyAfterImport(args.isImportReadOnly());
+        if (args.isResume()) {
+            if (checkpoint.getServingSettings() != null) {
+                importer.setServingSettings(checkpoint.getServingSettings());
+            }
+        } else {
+            checkpoint.setServingSettings(importer.suspendServingSettings());
+        }
         NominatimConnector nominatimConnector = new NominatimConnector(args.getHost(), args.getPort(), args.getDatabase(), args.getUser(), args.getPassword());
+        nominatimConnector.setAddressBatchSize(args.getAddressBatchSize());
+        nominatimConnector.setAddressCache(new AddressCache(args.getAddressCacheSize()));
+        nominatimConnector.setImportThreads(args.getImportThreads());
         nominatimConnector.setImporter(importer);
+        nominatimConnector.setCheckpoint(checkpoint);
         nominatimConnector.readEntireDatabase(args.getCountryCodes().split(","));
 
+        esServer.switchAlias(indexName);
+        if (args.isCleanupOldIndices()) {
+            esServer.deleteOldIndices(indexName);
+        }
+
         log.info("imported data from nominatim to photon with languages: " + args.getLanguages());
     }
 
@@ -159,26 +276,74 @@ public class App {
 //        });
 
         // setup search API
-        get("api", new SearchRequestHandler("api", esNodeClient, args.getLanguages()));
-        get("api/", new SearchRequestHandler("api/", esNodeClient, args.getLanguages()));
-        get("reverse", new ReverseSearchRequestHandler("reverse", esNodeClient, args.getLanguages()));
-        get("reverse/", new ReverseSearchRequestHandler("reverse/", esNodeClient, args.getLanguages()));
+        final SearchResultCache resultCache = args.getSearchCacheSize() > 0
+                ? new SearchResultCache(args.getSearchCacheSize(), args.getSearchCachePrecision()) : null;
+        final BaseElasticsearchSearcher searcher = new BaseElasticsearchSearcher(esNodeClient, FallbackStrategy.forName(args.getSearchFallback()),
+                args.getSearchFallbackDeadline());
+        final ScoringMode scoringMode = ScoringMode.forName(args.getSearchScoring());
+        final AsyncGeoJsonResponder asyncResponder = args.isSearchAsync() ? new AsyncGeoJsonResponder() : null;
+        // interactive and bulk requests have budgets of their own, bulk clients cannot starve autocompletion
+        final AdaptiveConcurrencyLimiter searchLimiter = args.getSearchConcurrency() > 0 ? new AdaptiveConcurrencyLimiter(args.getSearchConcurrency(),
+                args.getSearchLatencyTarget(), args.getSearchConcurrency() / 4, AdaptiveConcurrencyLimiter.DEFAULT_QUEUE_TIMEOUT_MILLIS) : null;
+        final AdaptiveConcurrencyLimiter bulkLimiter = args.getBulkConcurrency() > 0 ? new AdaptiveConcurrencyLimiter(args.getBulkConcurrency(),
+                args.getBulkLatencyTarget(), args.getBulkConcurrency(), AdaptiveConcurrencyLimiter.DEFAULT_QUEUE_TIMEOUT_MILLIS) : null;
+        get("api", limited(searchLimiter, new SearchRequestHandler("api", searcher, args.getLanguages(), resultCache, scoringMode, asyncResponder)));
+        get("api/", limited(searchLimiter, new SearchRequestHandler("api/", searcher, args.getLanguages(), resultCache, scoringMode, asyncResponder)));
+        if (resultCache != null) {
+            get("search-cache", (Request request, Response response) -> {
+                response.type("application/json");
+                return resultCache.getStats().toString();
+            });
+        }
+        get("reverse", limited(searchLimiter, new ReverseSearchRequestHandler("reverse", esNodeClient, args.getLanguages(), asyncResponder)));
+        get("reverse/", limited(searchLimiter, new ReverseSearchRequestHandler("reverse/", esNodeClient, args.getLanguages(), asyncResponder)));
 
         // setup bulk search APIs
-        get("bulk-geo", new BulkSearchRequestHandler("bulk-geo", esNodeClient, args.getLanguages()));
-        get("bulk-geo/", new BulkSearchRequestHandler("bulk-geo/", esNodeClient, args.getLanguages()));
-        get("bulk-reverse", new BulkReverseSearchRequestHandler("bulk-reverse", esNodeClient, args.getLanguages()));
-        get("bulk-reverse/", new BulkReverseSearchRequestHandler("bulk-reverse/", esNodeClient, args.getLanguages()));
+        get("bulk-geo", limited(bulkLimiter, new BulkSearchRequestHandler("bulk-geo", searcher, args.getLanguages(), scoringMode)));
+        get("bulk-geo/", limited(bulkLimiter, new BulkSearchRequestHandler("bulk-geo/", searcher, args.getLanguages(), scoringMode)));
+        get("bulk-reverse", limited(bulkLimiter, new BulkReverseSearchRequestHandler("bulk-reverse", esNodeClient, args.getLanguages(),
+                args.getBulkReversePrecision(), args.getBulkReverseCellSize())));
+        get("bulk-reverse/", limited(bulkLimiter, new BulkReverseSearchRequestHandler("bulk-reverse/", esNodeClient, args.getLanguages(),
+                args.getBulkReversePrecision(), args.getBulkReverseCellSize())));
 
 
         // setup update API
         final NominatimUpdater nominatimUpdater = new NominatimUpdater(args.getHost(), args.getPort(), args.getDatabase(), args.getUser(), args.getPassword());
-        Updater updater = new de.komoot.photon.elasticsearch.Updater(esNodeClient, args.getLanguages());
+        Updater updater = new de.komoot.photon.elasticsearch.Updater(esNodeClient, args.getLanguages(), args.getUpdateBulkActions(),
+                args.getUpdateBulkSize());
         nominatimUpdater.setUpdater(updater);
+        nominatimUpdater.setAddressCache(new AddressCache(args.getAddressCacheSize()));
+        nominatimUpdater.setUpdateThreads(args.getUpdateThreads());
+        if (resultCache != null) {
+            nominatimUpdater.addUpdateListener(resultCache::invalidateAll);
+        }
+
+        final NominatimUpdateScheduler updateScheduler = new NominatimUpdateScheduler(nominatimUpdater);
+        if (args.getUpdateInterval() > 0) {
+            updateScheduler.schedule(args.getUpdateInterval(), args.getUpdateMode());
+        }
+        if (args.isChangeFeed()) {
+            nominatimUpdater.installChangeFeed();
+            new NominatimChangeListener(nominatimUpdater, args.getHost(), args.getPort(), args.getDatabase(), args.getUser(), args.getPassword(),
+                    args.getChangeFeedBatchSize()).start();
+        }
 
         get("/nominatim-update", (Request request, Response response) -> {
-            new Thread(() -> nominatimUpdater.update()).start();
+            if (!updateScheduler.trigger()) {
+                return "nominatim update already queued (more information in /nominatim-update/status) ...";
+            }
             return "nominatim update started (more information in console output) ...";
         });
+        get("/nominatim-update/status", (Request request, Response response) -> {
+            response.type("application/json");
+            return updateScheduler.getStatus().toString();
+        });
+    }
+
+    /**
+     * @param limiter admission control for the route, null for none
+     */
+    private static Route limited(AdaptiveConcurrencyLimiter limiter, Route route) {
+        return limiter == null ? route : new AdmissionControlledRoute(limiter, route);
     }
 }
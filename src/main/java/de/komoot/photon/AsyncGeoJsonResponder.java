@@ -0,0 +1,98 @@
+package de.komoot.photon;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.komoot.photon.utils.GeoJsonWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.search.SearchHit;
+import org.json.JSONObject;
+import spark.Request;
+import spark.Response;
+
+import javax.servlet.AsyncContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * writes search results to the response once elasticsearch answered, the jetty thread is released while the search is running.
+ * <p/>
+ * Spark writes an empty body for a route unless the response is committed, so the headers are sent with status 200 when the search is
+ * started. A search failing afterwards aborts the connection.
+ */
+@Slf4j
+class AsyncGeoJsonResponder {
+    /**
+     * request attribute set if the response was aborted
+     */
+    static final String FAILED_ATTRIBUTE = "photon.search.failed";
+
+    private final GeoJsonWriter geoJsonWriter = new GeoJsonWriter();
+
+    // results are completed on elasticsearch threads, the response is written on threads of its own
+    private final ExecutorService writers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+            new ThreadFactoryBuilder().setNameFormat("photon-response-%d").setDaemon(true).build());
+
+    /**
+     * @return body for spark, the actual response is written asynchronously
+     */
+    String respond(CompletableFuture<List<JSONObject>> results, Request request, Response response) throws IOException {
+        return respond(results, geoJsonWriter::write, request, response);
+    }
+
+    /**
+     * like {@link #respond}, for hits written straight from their source
+     *
+     * @param language language the places are written in
+     */
+    String respondHits(CompletableFuture<List<SearchHit>> hits, final String language, Request request, Response response) throws IOException {
+        return respond(hits, (results, out) -> geoJsonWriter.writeHits(results, language, out), request, response);
+    }
+
+    private <T> String respond(CompletableFuture<T> results, final ResultWriter<T> resultWriter, Request request, Response response)
+            throws IOException {
+        if (results.isDone() && !results.isCompletedExceptionally()) {
+            // e.g. cached results
+            resultWriter.write(results.join(), response.raw().getOutputStream());
+            return "";
+        }
+
+        final AsyncContext asyncContext = request.raw().startAsync();
+        response.raw().flushBuffer();
+        results.whenCompleteAsync((features, error) -> {
+            if (error != null) {
+                log.error("search failed", error);
+                abort(asyncContext, error);
+                return;
+            }
+            try {
+                resultWriter.write(features, asyncContext.getResponse().getOutputStream());
+                asyncContext.complete();
+            } catch (IOException | RuntimeException e) {
+                log.warn("cannot write search results", e);
+                abort(asyncContext, e);
+            }
+        }, writers);
+        return "";
+    }
+
+    private void abort(AsyncContext asyncContext, Throwable cause) {
+        asyncContext.getRequest().setAttribute(FAILED_ATTRIBUTE, Boolean.TRUE);
+        org.eclipse.jetty.server.Request jettyRequest = org.eclipse.jetty.server.Request.getBaseRequest(asyncContext.getRequest());
+        if (jettyRequest != null) {
+            jettyRequest.getHttpChannel().abort(cause);
+        }
+        try {
+            // runs the async listeners
+            asyncContext.complete();
+        } catch (IllegalStateException e) {
+            log.debug("response already completed", e);
+        }
+    }
+
+    private interface ResultWriter<T> {
+        void write(T results, OutputStream out) throws IOException;
+    }
+}
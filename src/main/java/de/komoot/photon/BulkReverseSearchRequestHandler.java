@@ -3,16 +3,17 @@ package de.komoot.photon;
 import de.komoot.photon.query.BadRequestException;
 import de.komoot.photon.query.ReverseRequest;
 import de.komoot.photon.query.ReverseRequestFactory;
+import de.komoot.photon.searcher.BulkReverseRequestHandler;
 import de.komoot.photon.searcher.ReverseElasticsearchSearcher;
-import de.komoot.photon.searcher.ReverseRequestHandler;
-import de.komoot.photon.searcher.ReverseRequestHandlerFactory;
 import de.komoot.photon.utils.ConvertToGeoJson;
+import de.komoot.photon.utils.GeoJsonWriter;
 import org.elasticsearch.client.Client;
 import org.json.JSONObject;
 import spark.Request;
 import spark.Response;
 import spark.RouteImpl;
 
+import java.io.IOException;
 import java.util.*;
 
 import static spark.Spark.halt;
@@ -21,23 +22,33 @@ import static spark.Spark.halt;
  * @author svantulden
  */
 public class BulkReverseSearchRequestHandler<R extends ReverseRequest> extends RouteImpl {
+    private static final String FORMAT_PARAMETER = "format";
+    private static final String FORMAT_JSON = "json";
+    private static final String FORMAT_NDJSON = "ndjson";
+
     private final ReverseRequestFactory reverseRequestFactory;
-    private final ReverseRequestHandlerFactory requestHandlerFactory;
+    private final BulkReverseRequestHandler bulkRequestHandler;
     private final ConvertToGeoJson geoJsonConverter;
+    private final GeoJsonWriter geoJsonWriter = new GeoJsonWriter();
 
     BulkReverseSearchRequestHandler(String path, Client esNodeClient, String languages) {
+        this(path, esNodeClient, languages, BulkReverseRequestHandler.DEFAULT_PRECISION, BulkReverseRequestHandler.DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * @param precision number of decimals points are rounded to before they are looked up
+     * @param cellSize  size in degrees of the grid cells nearby points are searched together in
+     */
+    BulkReverseSearchRequestHandler(String path, Client esNodeClient, String languages, int precision, double cellSize) {
         super(path);
         Set<String> supportedLanguages = new HashSet<>(Arrays.asList(languages.split(",")));
         this.reverseRequestFactory = new ReverseRequestFactory(supportedLanguages);
         this.geoJsonConverter = new ConvertToGeoJson();
-        this.requestHandlerFactory = new ReverseRequestHandlerFactory(new ReverseElasticsearchSearcher(esNodeClient));
+        this.bulkRequestHandler = new BulkReverseRequestHandler(new ReverseElasticsearchSearcher(esNodeClient), precision, cellSize);
     }
 
     @Override
-    public String handle(Request request, Response response) {
-
-        List<String> responses = new ArrayList<>();
-
+    public String handle(Request request, Response response) throws IOException {
         List<R> photonRequests = null;
         try {
             photonRequests = reverseRequestFactory.createBulkWithBody(request);
@@ -47,18 +58,27 @@ public class BulkReverseSearchRequestHandler<R extends ReverseRequest> extends R
             halt(e.getHttpStatus(), json.toString());
         }
 
-        for (R photonRequest : photonRequests) {
-            ReverseRequestHandler<R> handler = requestHandlerFactory.createHandler(photonRequest);
-            List<JSONObject> results = handler.handle(photonRequest);
-            JSONObject geoJsonResults = geoJsonConverter.convert(results);
-            String s;
-            if (request.queryParams("debug") != null)
-                s = geoJsonResults.toString(4);
-            else
-                s = geoJsonResults.toString();
-            responses.add(s);
+        String format = request.queryParamOrDefault(FORMAT_PARAMETER, FORMAT_JSON);
+        if (!FORMAT_JSON.equals(format) && !FORMAT_NDJSON.equals(format)) {
+            JSONObject json = new JSONObject();
+            json.put("message", "invalid parameter 'format', can only be " + FORMAT_JSON + " or " + FORMAT_NDJSON);
+            halt(400, json.toString());
+        }
+
+        List<List<JSONObject>> bulkResults = bulkRequestHandler.handle(photonRequests);
+        if (request.queryParams("debug") != null) {
+            List<String> responses = new ArrayList<>();
+            for (List<JSONObject> results : bulkResults) {
+                responses.add(geoJsonConverter.convert(results).toString(4));
+            }
+            return responses.toString();
         }
 
-        return responses.toString();
+        boolean ndjson = FORMAT_NDJSON.equals(format);
+        if (ndjson) {
+            response.type(GeoJsonWriter.NDJSON_CONTENT_TYPE);
+        }
+        geoJsonWriter.writeAll(bulkResults, response.raw().getOutputStream(), ndjson);
+        return "";
     }
 }
@@ -3,16 +3,19 @@ package de.komoot.photon;
 import de.komoot.photon.query.BadRequestException;
 import de.komoot.photon.query.PhotonRequest;
 import de.komoot.photon.query.PhotonRequestFactory;
-import de.komoot.photon.searcher.BaseElasticsearchSearcher;
+import de.komoot.photon.query.ScoringMode;
+import de.komoot.photon.searcher.BulkPhotonRequestHandler;
+import de.komoot.photon.searcher.ElasticsearchSearcher;
 import de.komoot.photon.searcher.PhotonRequestHandler;
 import de.komoot.photon.searcher.PhotonRequestHandlerFactory;
 import de.komoot.photon.utils.ConvertToGeoJson;
-import org.elasticsearch.client.Client;
+import de.komoot.photon.utils.GeoJsonWriter;
 import org.json.JSONObject;
 import spark.Request;
 import spark.Response;
 import spark.RouteImpl;
 
+import java.io.IOException;
 import java.util.*;
 
 import static spark.Spark.halt;
@@ -22,24 +25,31 @@ import static spark.Spark.halt;
  */
 public class BulkSearchRequestHandler<R extends PhotonRequest> extends RouteImpl {
     private static final String DEBUG_PARAMETER = "debug";
+    private static final String FORMAT_PARAMETER = "format";
+    private static final String FORMAT_JSON = "json";
+    private static final String FORMAT_NDJSON = "ndjson";
 
     private final PhotonRequestFactory photonRequestFactory;
     private final PhotonRequestHandlerFactory requestHandlerFactory;
+    private final BulkPhotonRequestHandler bulkRequestHandler;
     private final ConvertToGeoJson geoJsonConverter;
+    private final GeoJsonWriter geoJsonWriter = new GeoJsonWriter();
 
-    BulkSearchRequestHandler(String path, Client esNodeClient, String languages) {
+    /**
+     * @param searcher    searcher running the queries
+     * @param scoringMode how results are scored
+     */
+    BulkSearchRequestHandler(String path, ElasticsearchSearcher searcher, String languages, ScoringMode scoringMode) {
         super(path);
         Set<String> supportedLanguages = new HashSet<String>(Arrays.asList(languages.split(",")));
         this.photonRequestFactory = new PhotonRequestFactory(supportedLanguages);
         this.geoJsonConverter = new ConvertToGeoJson();
-        this.requestHandlerFactory = new PhotonRequestHandlerFactory(new BaseElasticsearchSearcher(esNodeClient));
+        this.requestHandlerFactory = new PhotonRequestHandlerFactory(searcher, null, scoringMode);
+        this.bulkRequestHandler = new BulkPhotonRequestHandler(searcher, scoringMode);
     }
 
     @Override
-    public String handle(Request request, Response response) {
-
-        List<String> responses = new ArrayList<>();
-
+    public String handle(Request request, Response response) throws IOException {
         List<R> photonRequests = null;
         try {
             photonRequests = photonRequestFactory.createBulkWithBody(request);
@@ -49,20 +59,34 @@ public class BulkSearchRequestHandler<R extends PhotonRequest> extends RouteImpl
             halt(e.getHttpStatus(), json.toString());
         }
 
-        for (R photonRequest : photonRequests) {
-            PhotonRequestHandler<R> handler = requestHandlerFactory.createHandler(photonRequest);
-            List<JSONObject> results = handler.handle(photonRequest);
-            JSONObject geoJsonResults = geoJsonConverter.convert(results);
-            if (request.queryParams(DEBUG_PARAMETER) != null) {
+        String format = request.queryParamOrDefault(FORMAT_PARAMETER, FORMAT_JSON);
+        if (!FORMAT_JSON.equals(format) && !FORMAT_NDJSON.equals(format)) {
+            JSONObject json = new JSONObject();
+            json.put("message", "invalid parameter 'format', can only be " + FORMAT_JSON + " or " + FORMAT_NDJSON);
+            halt(400, json.toString());
+        }
+
+        List<List<JSONObject>> bulkResults = bulkRequestHandler.handle(photonRequests);
+        if (request.queryParams(DEBUG_PARAMETER) != null) {
+            List<String> responses = new ArrayList<>();
+            for (int i = 0; i < photonRequests.size(); i++) {
+                R photonRequest = photonRequests.get(i);
+                JSONObject geoJsonResults = geoJsonConverter.convert(bulkResults.get(i));
+                PhotonRequestHandler<R> handler = requestHandlerFactory.createHandler(photonRequest);
                 JSONObject debug = new JSONObject();
                 debug.put("query", new JSONObject(handler.dumpQuery(photonRequest)));
                 geoJsonResults.put(DEBUG_PARAMETER, debug);
                 responses.add(geoJsonResults.toString(4));
-            } else
-                responses.add(geoJsonResults.toString());
+            }
+            return responses.toString();
         }
 
-        return responses.toString();
+        boolean ndjson = FORMAT_NDJSON.equals(format);
+        if (ndjson) {
+            response.type(GeoJsonWriter.NDJSON_CONTENT_TYPE);
+        }
+        geoJsonWriter.writeAll(bulkResults, response.raw().getOutputStream(), ndjson);
+        return "";
     }
 
 }
\ No newline at end of file
@@ -5,6 +5,15 @@ package de.komoot.photon;
  */
 
 import com.beust.jcommander.Parameter;
+import de.komoot.photon.elasticsearch.Importer;
+import de.komoot.photon.nominatim.AddressCache;
+import de.komoot.photon.nominatim.NominatimChangeListener;
+import de.komoot.photon.nominatim.NominatimUpdateScheduler;
+import de.komoot.photon.query.ScoringMode;
+import de.komoot.photon.searcher.BaseElasticsearchSearcher;
+import de.komoot.photon.searcher.BulkReverseRequestHandler;
+import de.komoot.photon.searcher.FallbackStrategy;
+import de.komoot.photon.searcher.SearchResultCache;
 import lombok.Data;
 
 import java.io.File;
@@ -17,18 +26,117 @@ public class CommandLineArgs {
     @Parameter(names = "-transport-addresses", description = "the comma separated addresses of external elasticsearch nodes where the client can connect to (default is an empty string which forces an internal node to start)")
     private String transportAddresses = "";
 
-    @Parameter(names = "-nominatim-import", description = "import nominatim database into photon (this will delete previous index)")
+    @Parameter(names = "-nominatim-import", description = "import nominatim database into a new photon index, the previous index keeps serving until the import is complete")
     private boolean nominatimImport = false;
 
+    @Parameter(names = "-cleanup-old-indices", description = "delete the indices of previous imports once the new index serves")
+    private boolean cleanupOldIndices = false;
+
+    @Parameter(names = "-resume", description = "continue an interrupted nominatim import from its checkpoint in the data directory instead of starting over")
+    private boolean resume = false;
+
     @Parameter(names = "-languages", description = "languages nominatim importer should import and use at run-time, comma separated (default is 'en,fr,de,it')")
     private String languages = "en,fr,de,it";
 
     @Parameter(names = "-country-codes", description = "country codes filter that nominatim importer should import, comma separated. If empty full planet is done")
     private String countryCodes = "";
 
-    @Parameter(names = "-json", description = "import nominatim database and dump it to a json like files in (useful for developing)")
+    @Parameter(names = "-address-batch-size", description = "number of places whose address hierarchy is fetched from nominatim with a single query during import (default 1000, 1 queries every place separately)")
+    private int addressBatchSize = 1000;
+
+    @Parameter(names = "-address-cache-size", description = "maximum number of address places (cities, states, ...) kept in memory during import and updates (default 100000, 0 disables the cache)")
+    private int addressCacheSize = AddressCache.DEFAULT_SIZE;
+
+    @Parameter(names = "-search-fallback", description = "how misspelled queries fall back to the fuzzy query: sequential runs it after the exact query found nothing, multi-search sends both at once, deadline starts it when the exact query is slow (default sequential)")
+    private String searchFallback = FallbackStrategy.SEQUENTIAL.getName();
+
+    @Parameter(names = "-search-fallback-deadline", description = "milliseconds the exact query may take before the fuzzy query is started with -search-fallback deadline (default 50)")
+    private int searchFallbackDeadline = BaseElasticsearchSearcher.DEFAULT_FALLBACK_DEADLINE_MILLIS;
+
+    @Parameter(names = "-search-scoring", description = "how results are ranked by importance and location bias: script uses painless scripts, native the built-in field value factor and distance decay functions (default script)")
+    private String searchScoring = ScoringMode.SCRIPT.getName();
+
+    @Parameter(names = "-search-async", description = "answer /api and /reverse without keeping a server thread waiting for elasticsearch, the status code is sent before the search completes")
+    private boolean searchAsync = false;
+
+    @Parameter(names = "-search-concurrency", description = "maximum number of /api and /reverse requests handled at once, lowered while requests are slower than -search-latency-target, further requests are rejected with 503, 0 disables the limit (default 200)")
+    private int searchConcurrency = AdaptiveConcurrencyLimiter.DEFAULT_SEARCH_LIMIT;
+
+    @Parameter(names = "-search-latency-target", description = "milliseconds an /api or /reverse request may take before the number of concurrent requests is lowered (default 1000)")
+    private long searchLatencyTarget = AdaptiveConcurrencyLimiter.DEFAULT_SEARCH_LATENCY_MILLIS;
+
+    @Parameter(names = "-bulk-concurrency", description = "maximum number of /bulk-geo and /bulk-reverse requests handled at once, limited separately from the other searches, 0 disables the limit (default 8)")
+    private int bulkConcurrency = AdaptiveConcurrencyLimiter.DEFAULT_BULK_LIMIT;
+
+    @Parameter(names = "-bulk-latency-target", description = "milliseconds a bulk request may take before the number of concurrent bulk requests is lowered (default 30000)")
+    private long bulkLatencyTarget = AdaptiveConcurrencyLimiter.DEFAULT_BULK_LATENCY_MILLIS;
+
+    @Parameter(names = "-bulk-reverse-precision", description = "number of decimals the points of a /bulk-reverse request are rounded to, points equal after rounding are looked up once (default 6)")
+    private int bulkReversePrecision = BulkReverseRequestHandler.DEFAULT_PRECISION;
+
+    @Parameter(names = "-bulk-reverse-cell-size", description = "size in degrees of the grid cells the points of a /bulk-reverse request are searched together in (default 0.01)")
+    private double bulkReverseCellSize = BulkReverseRequestHandler.DEFAULT_CELL_SIZE;
+
+    @Parameter(names = "-search-cache-size", description = "maximum number of search results kept in memory for repeated requests to /api, 0 disables the cache (default 10000)")
+    private int searchCacheSize = SearchResultCache.DEFAULT_SIZE;
+
+    @Parameter(names = "-search-cache-precision", description = "number of decimals the location bias of a request is rounded to for the search cache (default 3, about 100m)")
+    private int searchCachePrecision = SearchResultCache.DEFAULT_BIAS_PRECISION;
+
+    @Parameter(names = "-update-threads", description = "number of geometry sectors updated in parallel by /nominatim-update, each uses its own database connection (default 1)")
+    private int updateThreads = 1;
+
+    @Parameter(names = "-update-interval", description = "seconds between scheduled nominatim updates, 0 only updates on requests to /nominatim-update (default 0)")
+    private int updateInterval = 0;
+
+    @Parameter(names = "-update-mode", description = "poll: scheduled updates only run when nominatim has unindexed changes, interval: every scheduled update runs (default poll)")
+    private String updateMode = NominatimUpdateScheduler.MODE_POLL;
+
+    @Parameter(names = "-change-feed", description = "install triggers queueing changed nominatim places and index them as soon as they are notified, without scanning nominatim's tables")
+    private boolean changeFeed = false;
+
+    @Parameter(names = "-change-feed-batch-size", description = "number of queued places of one rank written at once with -change-feed, all queued places are indexed in one run (default 5000)")
+    private int changeFeedBatchSize = NominatimChangeListener.DEFAULT_BATCH_SIZE;
+
+    @Parameter(names = "-update-bulk-actions", description = "maximum number of changes sent to elasticsearch in one bulk request by /nominatim-update (default 5000)")
+    private int updateBulkActions = de.komoot.photon.elasticsearch.Updater.DEFAULT_BULK_ACTIONS;
+
+    @Parameter(names = "-update-bulk-size", description = "maximum size in MB of a bulk request sent by /nominatim-update (default 5)")
+    private int updateBulkSize = de.komoot.photon.elasticsearch.Updater.DEFAULT_BULK_SIZE_MB;
+
+    @Parameter(names = "-import-threads", description = "number of threads reading the nominatim database in parallel during import, each uses its own database connections, or reading dump files with -json-import (default 1)")
+    private int importThreads = 1;
+
+    @Parameter(names = "-import-bulk-concurrency", description = "number of bulk requests sent to elasticsearch in parallel during import (default 2, 0 waits for every bulk request)")
+    private int importBulkConcurrency = Importer.DEFAULT_CONCURRENT_REQUESTS;
+
+    @Parameter(names = "-import-bulk-actions", description = "maximum number of documents per bulk request during import (default 10000)")
+    private int importBulkActions = Importer.DEFAULT_BULK_ACTIONS;
+
+    @Parameter(names = "-import-bulk-size", description = "maximum size of a bulk request in megabytes during import (default 15)")
+    private int importBulkSize = Importer.DEFAULT_BULK_SIZE_MB;
+
+    @Parameter(names = "-import-force-merge", description = "force-merge the index to this number of segments per shard after import, fewer segments make searches faster (default 0, no merge)")
+    private int importForceMerge = 0;
+
+    @Parameter(names = "-import-read-only", description = "block writes to the index after import, only for indexes that are not updated from nominatim afterwards")
+    private boolean importReadOnly = false;
+
+    @Parameter(names = "-json", description = "import nominatim database and dump it to json bulk files starting with the given path prefix, plus a manifest listing them")
     private String jsonDump = null;
 
+    @Parameter(names = "-json-compression", description = "compression of the json dump files, gzip or none (default gzip)")
+    private String jsonCompression = "gzip";
+
+    @Parameter(names = "-json-chunk-size", description = "size in megabytes after which the json dump continues in a new file (default 256)")
+    private int jsonChunkSize = JsonDumper.DEFAULT_CHUNK_SIZE_MB;
+
+    @Parameter(names = "-json-threads", description = "number of threads converting documents for the json dump (default number of cores)")
+    private int jsonThreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = "-json-import", description = "load a json dump into a new photon index instead of importing from nominatim, the manifest of a chunked dump or a single dump file")
+    private String jsonImport = null;
+
     @Parameter(names = "-recreate-index", description = "delete index and all documents, creates a new and empty photon index")
     private boolean recreateIndex = false;
 
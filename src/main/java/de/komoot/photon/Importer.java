@@ -17,4 +17,10 @@ public interface Importer {
      * import is finished
      */
     public void finish();
+
+    /**
+     * @return number of documents passed to {@link #add(PhotonDoc)} that are stored for good, all documents added before them are
+     * stored as well
+     */
+    public long getAcknowledgedCount();
 }
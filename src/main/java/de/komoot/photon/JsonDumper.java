@@ -1,40 +1,219 @@
 package de.komoot.photon;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
 
-import java.io.FileNotFoundException;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * useful to create json files that can be used for fast re imports
+ * <p/>
+ * Documents are written in the elasticsearch bulk format to a series of chunk files {@code <prefix>-00000.ndjson.gz},
+ * {@code <prefix>-00001.ndjson.gz}, ... and a manifest {@code <prefix>-manifest.json} listing every chunk with its number of documents.
+ * Batches of documents are serialized and compressed by a pool of threads, each batch becomes a gzip member of its own. Concatenated
+ * members are a valid gzip file, so chunks can be read with any gzip tool.
  *
  * @author christoph
  */
 @Slf4j
 public class JsonDumper implements Importer {
-    private PrintWriter writer = null;
+    public static final int DEFAULT_CHUNK_SIZE_MB = 256;
+    public static final String MANIFEST_SUFFIX = "-manifest.json";
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final String prefix;
     private final String[] languages;
+    private final boolean compress;
+    private final long chunkSizeBytes;
+    private final ExecutorService executor;
+    private final int maxPendingBatches;
+    /**
+     * batches being serialized in the order they are written
+     */
+    private final Deque<Future<EncodedBatch>> pendingBatches = new ArrayDeque<>();
+    private List<PhotonDoc> batch = new ArrayList<>(BATCH_SIZE);
+
+    private OutputStream chunk = null;
+    private File chunkFile;
+    private long chunkDocuments;
+    private long chunkBytes;
+    private final JSONArray chunks = new JSONArray();
+    private long writtenCount = 0;
+    private long documentCount = 0;
+
+    /**
+     * serialized documents of one batch
+     */
+    private static class EncodedBatch {
+        final byte[] bytes;
+        /**
+         * documents written, failed documents are left out
+         */
+        final int documents;
+        /**
+         * documents handed to {@link #add(PhotonDoc)}
+         */
+        final int added;
+
+        EncodedBatch(byte[] bytes, int documents, int added) {
+            this.bytes = bytes;
+            this.documents = documents;
+            this.added = added;
+        }
+    }
+
+    public JsonDumper(String prefix, String languages) {
+        this(prefix, languages, true, DEFAULT_CHUNK_SIZE_MB, Runtime.getRuntime().availableProcessors());
+    }
 
-    public JsonDumper(String filename, String languages) throws FileNotFoundException {
-        this.writer = new PrintWriter(filename);
+    /**
+     * @param prefix      path prefix of the chunk files and the manifest
+     * @param languages   comma separated languages to dump
+     * @param compress    gzip the chunk files
+     * @param chunkSizeMb size after which the next chunk file is started
+     * @param threads     number of threads serializing documents
+     */
+    public JsonDumper(String prefix, String languages, boolean compress, int chunkSizeMb, int threads) {
+        this.prefix = prefix;
         this.languages = languages.split(",");
+        this.compress = compress;
+        this.chunkSizeBytes = Math.max(1, chunkSizeMb) * 1024L * 1024L;
+        threads = Math.max(1, threads);
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.maxPendingBatches = 2 * threads;
     }
 
     @Override
     public void add(PhotonDoc doc) {
+        batch.add(doc);
+        if (batch.size() >= BATCH_SIZE) {
+            submitBatch();
+        }
+    }
+
+    private void submitBatch() {
+        final List<PhotonDoc> docs = batch;
+        batch = new ArrayList<>(BATCH_SIZE);
+        pendingBatches.add(executor.submit(new Callable<EncodedBatch>() {
+            @Override
+            public EncodedBatch call() throws IOException {
+                return encode(docs);
+            }
+        }));
+
+        while (pendingBatches.size() > maxPendingBatches) {
+            writeNextBatch();
+        }
+    }
+
+    /**
+     * converts documents to bulk lines, documents failing to convert are logged and left out
+     */
+    private EncodedBatch encode(List<PhotonDoc> docs) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(docs.size() * 512);
+        OutputStream out = compress ? new GZIPOutputStream(bytes, 65536) : bytes;
+        int written = 0;
+        for (PhotonDoc doc : docs) {
+            byte[] source;
+            try {
+                source = Utils.convert(doc, languages).string().getBytes(StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                log.error("error writing json for document " + doc.getUid(), e);
+                continue;
+            }
+            out.write(("{\"index\":{\"_id\":\"" + doc.getUid() + "\"}}\n").getBytes(StandardCharsets.UTF_8));
+            out.write(source);
+            out.write('\n');
+            written++;
+        }
+        out.close();
+        return new EncodedBatch(bytes.toByteArray(), written, docs.size());
+    }
+
+    private void writeNextBatch() {
+        EncodedBatch encoded;
+        try {
+            encoded = pendingBatches.poll().get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("error writing json dump", e);
+        }
+
         try {
-            writer.println("{\"index\": {}}");
-            writer.println(Utils.convert(doc, this.languages).string());
+            if (chunk == null || chunkBytes >= chunkSizeBytes) {
+                closeChunk();
+                chunkFile = new File(String.format("%s-%05d.ndjson%s", prefix, chunks.length(), compress ? ".gz" : ""));
+                chunk = new BufferedOutputStream(new FileOutputStream(chunkFile), 1 << 20);
+                chunkDocuments = 0;
+                chunkBytes = 0;
+            }
+            chunk.write(encoded.bytes);
         } catch (IOException e) {
-            log.error("error writing json file", e);
+            throw new RuntimeException("error writing json file " + chunkFile, e);
         }
+        chunkBytes += encoded.bytes.length;
+        chunkDocuments += encoded.documents;
+        writtenCount += encoded.documents;
+        documentCount += encoded.added;
+    }
+
+    private void closeChunk() throws IOException {
+        if (chunk == null) return;
+
+        chunk.close();
+        chunk = null;
+        chunks.put(new JSONObject()
+                .put("file", chunkFile.getName())
+                .put("documents", chunkDocuments)
+                .put("bytes", chunkBytes));
+        log.info(String.format("wrote %d documents to %s", chunkDocuments, chunkFile));
     }
 
+    @Override
+    public long getAcknowledgedCount() {
+        return documentCount;
+    }
+
+    /**
+     * writes the remaining documents and the manifest
+     */
     @Override
     public void finish() {
-        if (writer != null) {
-            writer.close();
+        if (!batch.isEmpty()) {
+            submitBatch();
+        }
+        while (!pendingBatches.isEmpty()) {
+            writeNextBatch();
+        }
+        executor.shutdown();
+
+        File manifest = new File(prefix + MANIFEST_SUFFIX);
+        try {
+            closeChunk();
+            JSONObject json = new JSONObject()
+                    .put("format", "elasticsearch-bulk")
+                    .put("compression", compress ? "gzip" : "none")
+                    .put("languages", new JSONArray(languages))
+                    .put("documents", writtenCount)
+                    .put("chunks", chunks);
+            FileUtils.writeStringToFile(manifest, json.toString(1), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("error writing json dump manifest " + manifest, e);
         }
+        log.info(String.format("dumped %d documents into %d chunks, manifest %s", writtenCount, chunks.length(), manifest));
     }
 }
@@ -7,12 +7,14 @@ import de.komoot.photon.searcher.ReverseElasticsearchSearcher;
 import de.komoot.photon.searcher.ReverseRequestHandler;
 import de.komoot.photon.searcher.ReverseRequestHandlerFactory;
 import de.komoot.photon.utils.ConvertToGeoJson;
+import de.komoot.photon.utils.GeoJsonWriter;
 import org.elasticsearch.client.Client;
 import org.json.JSONObject;
 import spark.Request;
 import spark.Response;
 import spark.RouteImpl;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
@@ -27,9 +29,19 @@ public class ReverseSearchRequestHandler<R extends ReverseRequest> extends Route
     private final ReverseRequestFactory reverseRequestFactory;
     private final ReverseRequestHandlerFactory requestHandlerFactory;
     private final ConvertToGeoJson geoJsonConverter;
+    private final GeoJsonWriter geoJsonWriter = new GeoJsonWriter();
+    private final AsyncGeoJsonResponder asyncResponder;
 
     ReverseSearchRequestHandler(String path, Client esNodeClient, String languages) {
+        this(path, esNodeClient, languages, null);
+    }
+
+    /**
+     * @param asyncResponder writes the results without blocking the request thread, null answers synchronously
+     */
+    ReverseSearchRequestHandler(String path, Client esNodeClient, String languages, AsyncGeoJsonResponder asyncResponder) {
         super(path);
+        this.asyncResponder = asyncResponder;
         Set<String> supportedLanguages = new HashSet<String>(Arrays.asList(languages.split(",")));
         this.reverseRequestFactory = new ReverseRequestFactory(supportedLanguages);
         this.geoJsonConverter = new ConvertToGeoJson();
@@ -37,7 +49,7 @@ public class ReverseSearchRequestHandler<R extends ReverseRequest> extends Route
     }
 
     @Override
-    public String handle(Request request, Response response) {
+    public String handle(Request request, Response response) throws IOException {
         R photonRequest = null;
         try {
             photonRequest = reverseRequestFactory.createWithBody(request);
@@ -47,11 +59,16 @@ public class ReverseSearchRequestHandler<R extends ReverseRequest> extends Route
             halt(e.getHttpStatus(), json.toString());
         }
         ReverseRequestHandler<R> handler = requestHandlerFactory.createHandler(photonRequest);
-        List<JSONObject> results = handler.handle(photonRequest);
-        JSONObject geoJsonResults = geoJsonConverter.convert(results);
-        if (request.queryParams("debug") != null)
-            return geoJsonResults.toString(4);
+        if (request.queryParams("debug") != null) {
+            List<JSONObject> results = handler.handle(photonRequest);
+            return geoJsonConverter.convert(results).toString(4);
+        }
 
-        return geoJsonResults.toString();
+        // the hits are written without converting them
+        if (asyncResponder != null) {
+            return asyncResponder.respondHits(handler.handleHitsAsync(photonRequest), photonRequest.getLanguage(), request, response);
+        }
+        geoJsonWriter.writeHits(handler.handleHits(photonRequest), photonRequest.getLanguage(), response.raw().getOutputStream());
+        return "";
     }
 }
@@ -3,16 +3,21 @@ package de.komoot.photon;
 import de.komoot.photon.query.BadRequestException;
 import de.komoot.photon.query.PhotonRequest;
 import de.komoot.photon.query.PhotonRequestFactory;
+import de.komoot.photon.query.ScoringMode;
 import de.komoot.photon.searcher.BaseElasticsearchSearcher;
+import de.komoot.photon.searcher.ElasticsearchSearcher;
 import de.komoot.photon.searcher.PhotonRequestHandler;
 import de.komoot.photon.searcher.PhotonRequestHandlerFactory;
+import de.komoot.photon.searcher.SearchResultCache;
 import de.komoot.photon.utils.ConvertToGeoJson;
+import de.komoot.photon.utils.GeoJsonWriter;
 import org.elasticsearch.client.Client;
 import org.json.JSONObject;
 import spark.Request;
 import spark.Response;
 import spark.RouteImpl;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
@@ -29,17 +34,33 @@ public class SearchRequestHandler<R extends PhotonRequest> extends RouteImpl {
     private final PhotonRequestFactory photonRequestFactory;
     private final PhotonRequestHandlerFactory requestHandlerFactory;
     private final ConvertToGeoJson geoJsonConverter;
+    private final GeoJsonWriter geoJsonWriter = new GeoJsonWriter();
+    private final AsyncGeoJsonResponder asyncResponder;
+    private final boolean cached;
 
     SearchRequestHandler(String path, Client esNodeClient, String languages) {
+        this(path, new BaseElasticsearchSearcher(esNodeClient), languages, null, ScoringMode.SCRIPT, null);
+    }
+
+    /**
+     * @param searcher       searcher running the queries
+     * @param resultCache    cache for search results, null disables caching
+     * @param scoringMode    how results are scored
+     * @param asyncResponder writes the results without blocking the request thread, null answers synchronously
+     */
+    SearchRequestHandler(String path, ElasticsearchSearcher searcher, String languages, SearchResultCache resultCache, ScoringMode scoringMode,
+                         AsyncGeoJsonResponder asyncResponder) {
         super(path);
+        this.asyncResponder = asyncResponder;
+        this.cached = resultCache != null;
         Set<String> supportedLanguages = new HashSet<String>(Arrays.asList(languages.split(",")));
         this.photonRequestFactory = new PhotonRequestFactory(supportedLanguages);
         this.geoJsonConverter = new ConvertToGeoJson();
-        this.requestHandlerFactory = new PhotonRequestHandlerFactory(new BaseElasticsearchSearcher(esNodeClient));
+        this.requestHandlerFactory = new PhotonRequestHandlerFactory(searcher, resultCache, scoringMode);
     }
 
     @Override
-    public String handle(Request request, Response response) {
+    public String handle(Request request, Response response) throws IOException {
         R photonRequest = null;
         try {
             photonRequest = photonRequestFactory.createWithBody(request);
@@ -49,15 +70,29 @@ public class SearchRequestHandler<R extends PhotonRequest> extends RouteImpl {
             halt(e.getHttpStatus(), json.toString());
         }
         PhotonRequestHandler<R> handler = requestHandlerFactory.createHandler(photonRequest);
+        boolean withDebug = request.queryParams(DEBUG_PARAMETER) != null;
+        if (!withDebug && !cached) {
+            // nothing to keep, the hits are written without converting them
+            if (asyncResponder != null) {
+                return asyncResponder.respondHits(handler.handleHitsAsync(photonRequest), photonRequest.getLanguage(), request, response);
+            }
+            geoJsonWriter.writeHits(handler.handleHits(photonRequest), photonRequest.getLanguage(), response.raw().getOutputStream());
+            return "";
+        }
+        if (asyncResponder != null && !withDebug) {
+            return asyncResponder.respond(handler.handleAsync(photonRequest), request, response);
+        }
+
         List<JSONObject> results = handler.handle(photonRequest);
-        JSONObject geoJsonResults = geoJsonConverter.convert(results);
-        if (request.queryParams(DEBUG_PARAMETER) != null) {
+        if (withDebug) {
+            JSONObject geoJsonResults = geoJsonConverter.convert(results);
             JSONObject debug = new JSONObject();
             debug.put("query", new JSONObject(handler.dumpQuery(photonRequest)));
             geoJsonResults.put(DEBUG_PARAMETER, debug);
             return geoJsonResults.toString(4);
         }
 
-        return geoJsonResults.toString();
+        geoJsonWriter.write(results, response.raw().getOutputStream());
+        return "";
     }
 }
\ No newline at end of file
@@ -1,5 +1,8 @@
 package de.komoot.photon;
 
+import java.util.Collection;
+import java.util.Set;
+
 /**
  * @author felix
  */
@@ -10,7 +13,20 @@ public interface Updater {
 
     public void delete(Long id);
 
+    /**
+     * writes the remaining changes, they are visible to searches when it returns
+     */
     public void finish();
 
     public void updateOrCreate(PhotonDoc updatedDoc);
+
+    /**
+     * replaces only the address fields (street, city, state, context) of an indexed document, each field as a whole
+     */
+    public void updateAddress(PhotonDoc doc);
+
+    /**
+     * @return place ids of the given documents whose names differ from the names of the indexed document or that are not indexed
+     */
+    public Set<Long> getRenamedPlaceIds(Collection<PhotonDoc> docs);
 }
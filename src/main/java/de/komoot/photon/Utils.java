@@ -62,6 +62,32 @@ public class Utils {
         return builder;
     }
 
+    /**
+     * converts only the fields a document takes from its address places. Fields the document does not have are written as null, so a
+     * partial update removes them from the indexed document.
+     */
+    public static XContentBuilder convertAddress(PhotonDoc doc, String[] languages) throws IOException {
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        writeAddressNames(builder, doc.getCity(), "city", languages);
+        writeAddressNames(builder, doc.getState(), "state", languages);
+        writeAddressNames(builder, doc.getStreet(), "street", languages);
+        if (doc.getContext().isEmpty()) {
+            builder.nullField("context");
+        } else {
+            writeContext(builder, doc.getContext(), languages);
+        }
+        return builder.endObject();
+    }
+
+    private static void writeAddressNames(XContentBuilder builder, Map<String, String> names, String name, String[] languages) throws IOException {
+        Map<String, String> fNames = filterNames(names, languages);
+        if (fNames.isEmpty()) {
+            builder.nullField(name);
+        } else {
+            write(builder, fNames, name);
+        }
+    }
+
     private static void writeExtent(XContentBuilder builder, Envelope bbox) throws IOException {
         if (bbox == null) return;
 
@@ -80,6 +106,13 @@ public class Utils {
     }
 
     private static void writeName(XContentBuilder builder, Map<String, String> name, String[] languages) throws IOException {
+        write(builder, getIndexedNames(name, languages), "name");
+    }
+
+    /**
+     * @return the names of a place as they are written to the name field of its document
+     */
+    public static Map<String, String> getIndexedNames(Map<String, String> name, String[] languages) {
         Map<String, String> fNames = filterNames(name, languages);
 
         if (name.get("alt_name") != null)
@@ -97,7 +130,7 @@ public class Utils {
         if (name.get("reg_name") != null)
             fNames.put("reg", name.get("reg_name"));
 
-        write(builder, fNames, "name");
+        return fNames;
     }
 
     private static void write(XContentBuilder builder, Map<String, String> fNames, String name) throws IOException {
@@ -3,64 +3,315 @@ package de.komoot.photon.elasticsearch;
 import de.komoot.photon.PhotonDoc;
 import de.komoot.photon.Utils;
 import lombok.extern.slf4j.Slf4j;
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * elasticsearch importer
+ * <p/>
+ * Documents are sent by a {@link BulkProcessor}: a bulk request is flushed as soon as it reaches either the maximum number of documents
+ * or the maximum payload size and up to {@link #concurrentRequests} requests are in flight while the next one is filled. Bulks rejected
+ * by a busy node are retried with exponential backoff.
+ * <p/>
+ * While documents are loaded the index is neither refreshed nor replicated, the serving settings are restored by {@link #finish()}.
+ * Optionally the index is force-merged and made read-only afterwards.
  *
  * @author felix
  */
 @Slf4j
 public class Importer implements de.komoot.photon.Importer {
-    private int documentCount = 0;
+    public static final int DEFAULT_CONCURRENT_REQUESTS = 2;
+    public static final int DEFAULT_BULK_ACTIONS = 10000;
+    public static final int DEFAULT_BULK_SIZE_MB = 15;
 
-    private final String indexName = "photon";
+    private static final String REFRESH_INTERVAL = "index.refresh_interval";
+    private static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+    private static final String BLOCKS_WRITE = "index.blocks.write";
+
+    private final String indexName;
     private final String indexType = "place";
     private final Client esClient;
-    private BulkRequestBuilder bulkRequest;
     private final String[] languages;
+    private final int concurrentRequests;
+    private final int bulkActions;
+    private final ByteSizeValue bulkSize;
+
+    private int forceMergeSegments = 0;
+    private boolean readOnlyAfterImport = false;
+
+    private BulkProcessor bulkProcessor;
+    /**
+     * index settings replaced while bulk loading, null when not loading
+     */
+    private Settings servingSettings;
+    /**
+     * settings to restore instead of the current ones at the next start of bulk loading, set for a resumed import
+     */
+    private Settings resumedServingSettings;
+    private final AtomicLong documentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    /**
+     * start offset of every bulk in flight by execution id, a bulk failing as a whole stays here so the acknowledged count stops growing
+     */
+    private final TreeMap<Long, Long> inFlight = new TreeMap<>();
+    /**
+     * documents added before the bulk that is currently filled, guarded by {@link #inFlight}
+     */
+    private long submittedCount = 0;
+    /**
+     * documents that could not be converted since the last bulk was sent, guarded by {@link #inFlight}
+     */
+    private long skippedCount = 0;
 
     public Importer(Client esClient, String languages) {
+        this(esClient, Server.INDEX_ALIAS, languages, DEFAULT_CONCURRENT_REQUESTS, DEFAULT_BULK_ACTIONS, DEFAULT_BULK_SIZE_MB);
+    }
+
+    /**
+     * @param esClient
+     * @param indexName          index or alias documents are written to
+     * @param languages          comma separated languages to index
+     * @param concurrentRequests number of bulk requests in flight while the next one is filled, 0 sends every bulk synchronously
+     * @param bulkActions        maximum number of documents per bulk request
+     * @param bulkSizeMb         maximum payload size of a bulk request in megabytes
+     */
+    public Importer(Client esClient, String indexName, String languages, int concurrentRequests, int bulkActions, int bulkSizeMb) {
         this.esClient = esClient;
-        this.bulkRequest = esClient.prepareBulk();
+        this.indexName = indexName;
         this.languages = languages.split(",");
+        this.concurrentRequests = Math.max(0, concurrentRequests);
+        this.bulkActions = Math.max(1, bulkActions);
+        this.bulkSize = new ByteSizeValue(Math.max(1, bulkSizeMb), ByteSizeUnit.MB);
+        this.bulkProcessor = createBulkProcessor();
+    }
+
+    private BulkProcessor createBulkProcessor() {
+        return BulkProcessor.builder(esClient, new BulkProcessor.Listener() {
+            @Override
+            public void beforeBulk(long executionId, BulkRequest request) {
+                // bulks are built in the order documents are added, so the skipped documents belong to this bulk
+                synchronized (inFlight) {
+                    inFlight.put(executionId, submittedCount);
+                    submittedCount += request.numberOfActions() + skippedCount;
+                    skippedCount = 0;
+                }
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+                // documents rejected individually are counted as failed but do not hold back the acknowledged count
+                synchronized (inFlight) {
+                    inFlight.remove(executionId);
+                }
+                if (!response.hasFailures()) return;
+
+                int failed = 0;
+                String firstFailure = null;
+                for (BulkItemResponse item : response.getItems()) {
+                    if (item.isFailed()) {
+                        failed++;
+                        if (firstFailure == null) {
+                            firstFailure = "[" + item.getId() + "]: " + item.getFailureMessage();
+                        }
+                    }
+                }
+                failedCount.addAndGet(failed);
+                log.error(String.format("error while bulk import: %d of %d documents failed, first failure %s", failed, request.numberOfActions(), firstFailure));
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+                failedCount.addAndGet(request.numberOfActions());
+                log.error("error while bulk import: bulk of " + request.numberOfActions() + " documents failed", failure);
+            }
+        })
+                .setConcurrentRequests(concurrentRequests)
+                .setBulkActions(bulkActions)
+                .setBulkSize(bulkSize)
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(100), 8))
+                .build();
+    }
+
+    /**
+     * @param forceMergeSegments merge the index down to this number of segments per shard at {@link #finish()}, 0 disables merging
+     */
+    public void setForceMergeSegments(int forceMergeSegments) {
+        this.forceMergeSegments = Math.max(0, forceMergeSegments);
+    }
+
+    /**
+     * @param readOnlyAfterImport block writes to the index after {@link #finish()}, the index cannot be updated any more
+     */
+    public void setReadOnlyAfterImport(boolean readOnlyAfterImport) {
+        this.readOnlyAfterImport = readOnlyAfterImport;
+    }
+
+    /**
+     * suspends refreshes and replicas before the first document is added. The returned settings should be kept with the progress of the
+     * import: when it is resumed, the index is already suspended and they are passed to {@link #setServingSettings}.
+     *
+     * @return refresh interval and number of replicas the index is served with
+     */
+    public synchronized Map<String, String> suspendServingSettings() {
+        ensureBulkLoad();
+        return servingSettings.getAsMap();
+    }
+
+    /**
+     * @param servingSettings settings returned by {@link #suspendServingSettings()} when the interrupted import was started, they are
+     *                        restored by {@link #finish()} instead of the suspended settings the index has now
+     */
+    public synchronized void setServingSettings(Map<String, String> servingSettings) {
+        this.resumedServingSettings = Settings.builder().put(servingSettings).build();
+    }
+
+    /**
+     * disables refreshes and replicas while documents are loaded and remembers the previous values
+     */
+    private void startBulkLoad() {
+        // keyed by the concrete index if written through the alias
+        Settings current = esClient.admin().indices().prepareGetSettings(indexName).get().getIndexToSettings().valuesIt().next();
+        if (resumedServingSettings != null) {
+            servingSettings = resumedServingSettings;
+            resumedServingSettings = null;
+        } else if ("-1".equals(current.get(REFRESH_INTERVAL))) {
+            // left behind by an interrupted import whose serving settings were not saved
+            servingSettings = Settings.builder().put(REFRESH_INTERVAL, "1s").put(NUMBER_OF_REPLICAS, "1").build();
+            log.warn("index " + indexName + " is still suspended by an interrupted import, restoring default serving settings after the import");
+        } else {
+            servingSettings = Settings.builder()
+                    .put(REFRESH_INTERVAL, current.get(REFRESH_INTERVAL, "1s"))
+                    .put(NUMBER_OF_REPLICAS, current.get(NUMBER_OF_REPLICAS, "1"))
+                    .build();
+        }
+
+        esClient.admin().indices().prepareUpdateSettings(indexName).setSettings(Settings.builder()
+                .put(REFRESH_INTERVAL, "-1")
+                .put(NUMBER_OF_REPLICAS, "0")).get();
+        log.info("suspended refresh and replicas of index " + indexName + " for import, serving settings: " + servingSettings.getAsMap());
+    }
+
+    /**
+     * makes the loaded documents visible, optionally merges segments and restores the serving settings
+     */
+    private void finishBulkLoad() {
+        esClient.admin().indices().prepareRefresh(indexName).get();
+
+        if (forceMergeSegments > 0) {
+            // merge before replicas are restored so that they are copied from the merged segments
+            long startMillis = System.currentTimeMillis();
+            esClient.admin().indices().prepareForceMerge(indexName).setMaxNumSegments(forceMergeSegments).get();
+            log.info(String.format("force-merged index %s to %d segments in %d seconds", indexName, forceMergeSegments, (System.currentTimeMillis() - startMillis) / 1000));
+        }
+
+        Settings.Builder settings = Settings.builder().put(servingSettings);
+        if (readOnlyAfterImport) {
+            settings.put(BLOCKS_WRITE, true);
+        }
+        esClient.admin().indices().prepareUpdateSettings(indexName).setSettings(settings).get();
+        log.info("restored serving settings of index " + indexName + (readOnlyAfterImport ? ", index is read-only" : ""));
+        servingSettings = null;
+    }
+
+    private synchronized void ensureBulkLoad() {
+        if (servingSettings == null) {
+            startBulkLoad();
+        }
     }
 
     @Override
     public void add(PhotonDoc doc) {
+        ensureBulkLoad();
         try {
-            this.bulkRequest.add(this.esClient.prepareIndex(indexName, indexType).
-                    setSource(Utils.convert(doc, languages)).setId(doc.getUid()));
+            this.bulkProcessor.add(this.esClient.prepareIndex(indexName, indexType).
+                    setSource(Utils.convert(doc, languages)).setId(doc.getUid()).request());
         } catch (IOException e) {
             log.error("could not bulk add document " + doc.getUid(), e);
+            failedCount.incrementAndGet();
+            synchronized (inFlight) {
+                skippedCount++;
+            }
             return;
         }
-        this.documentCount += 1;
-        if (this.documentCount > 0 && this.documentCount % 10000 == 0) {
-            this.saveDocuments();
+        this.documentCount.incrementAndGet();
+    }
+
+    /**
+     * adds documents in the elasticsearch bulk format as written by {@link de.komoot.photon.JsonDumper}, the sources are indexed as they
+     * are. May be called from several threads.
+     *
+     * @param data      bulk body, complete pairs of action and source lines
+     * @param documents number of documents in the body
+     */
+    public void addBulk(byte[] data, int from, int length, int documents) {
+        ensureBulkLoad();
+        try {
+            this.bulkProcessor.add(new BytesArray(data, from, length), indexName, indexType, XContentType.JSON);
+        } catch (Exception e) {
+            throw new RuntimeException("invalid bulk data", e);
         }
+        this.documentCount.addAndGet(documents);
     }
 
-    private void saveDocuments() {
-        if (this.documentCount < 1) return;
+    /**
+     * sends the remaining documents and waits for all bulk requests in flight
+     */
+    @Override
+    public void finish() {
+        try {
+            while (!this.bulkProcessor.awaitClose(1, TimeUnit.MINUTES)) {
+                log.info("waiting for bulk requests to finish");
+            }
+        } catch (InterruptedException e) {
+            log.warn("interrupted while waiting for bulk requests to finish", e);
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (inFlight) {
+            submittedCount += skippedCount;
+            skippedCount = 0;
+        }
 
-        BulkResponse bulkResponse = bulkRequest.execute().actionGet();
-        if (bulkResponse.hasFailures()) {
-            log.error("error while bulk import:" + bulkResponse.buildFailureMessage());
+        if (failedCount.get() > 0) {
+            log.error(String.format("bulk import finished, %d of %d documents failed", failedCount.get(), documentCount.get()));
         }
-        this.bulkRequest = this.esClient.prepareBulk();
+        if (servingSettings != null) {
+            finishBulkLoad();
+        }
+        this.documentCount.set(0);
+        this.bulkProcessor = createBulkProcessor();
     }
 
     @Override
-    public void finish() {
-        this.saveDocuments();
-        this.documentCount = 0;
+    public long getAcknowledgedCount() {
+        synchronized (inFlight) {
+            return inFlight.isEmpty() ? submittedCount : inFlight.firstEntry().getValue();
+        }
+    }
+
+    /**
+     * @return number of documents that could not be indexed since this importer was created
+     */
+    public long getFailedCount() {
+        return failedCount.get();
     }
 
     public long count() {
@@ -0,0 +1,199 @@
+package de.komoot.photon.elasticsearch;
+
+import de.komoot.photon.JsonDumper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * loads dumps written by {@link JsonDumper} into elasticsearch without touching nominatim.
+ * <p/>
+ * The dump files are read by several threads in parallel, the bulk bodies are cut at document boundaries and handed to the
+ * {@link Importer} as they are, the documents are neither parsed nor converted again.
+ */
+@Slf4j
+public class JsonImporter {
+    /**
+     * size of the bulk bodies read from a file before they are handed to the importer
+     */
+    private static final int BULK_BODY_SIZE = 1 << 20;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private final Importer importer;
+    private final int threads;
+
+    /**
+     * @param importer importer the documents are sent to
+     * @param threads  number of files read in parallel
+     */
+    public JsonImporter(Importer importer, int threads) {
+        this.importer = importer;
+        this.threads = Math.max(1, threads);
+    }
+
+    private static boolean isManifest(File path) {
+        return path.getName().endsWith(JsonDumper.MANIFEST_SUFFIX);
+    }
+
+    /**
+     * @param path manifest of a chunked dump or a single dump file
+     * @return languages the dump was created with, null for a single file
+     */
+    public static List<String> getLanguages(File path) throws IOException {
+        if (!isManifest(path)) {
+            return null;
+        }
+
+        JSONArray languages = readManifest(path).getJSONArray("languages");
+        List<String> result = new ArrayList<>(languages.length());
+        for (int i = 0; i < languages.length(); i++) {
+            result.add(languages.getString(i));
+        }
+        return result;
+    }
+
+    /**
+     * @param path manifest of a chunked dump or a single dump file
+     * @return all files of the dump
+     */
+    static List<File> getDumpFiles(File path) throws IOException {
+        if (!isManifest(path)) {
+            return Collections.singletonList(path);
+        }
+
+        JSONArray chunks = readManifest(path).getJSONArray("chunks");
+        List<File> files = new ArrayList<>(chunks.length());
+        for (int i = 0; i < chunks.length(); i++) {
+            files.add(new File(path.getAbsoluteFile().getParentFile(), chunks.getJSONObject(i).getString("file")));
+        }
+        return files;
+    }
+
+    private static JSONObject readManifest(File path) throws IOException {
+        return new JSONObject(FileUtils.readFileToString(path, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * loads all files of a dump and finishes the importer
+     *
+     * @param path manifest of a chunked dump or a single, possibly gzipped, dump file
+     * @return number of documents read
+     */
+    public long load(File path) throws IOException {
+        final long startMillis = System.currentTimeMillis();
+        final AtomicLong counter = new AtomicLong();
+        List<File> files = getDumpFiles(path);
+        log.info(String.format("loading %d dump files with %d threads", files.size(), threads));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> results = new ArrayList<>(files.size());
+            for (final File file : files) {
+                results.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws IOException {
+                        long documents = loadFile(file);
+                        long total = counter.addAndGet(documents);
+                        final double documentsPerSecond = 1000d * total / (System.currentTimeMillis() - startMillis);
+                        log.info(String.format("loaded %d documents from %s, %d in total [%.1f/second]", documents, file, total, documentsPerSecond));
+                        return documents;
+                    }
+                }));
+            }
+            for (Future<Long> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("cannot load json dump " + path, e);
+        } finally {
+            executor.shutdownNow();
+            importer.finish();
+        }
+        return counter.get();
+    }
+
+    /**
+     * streams a dump file to the importer in bulk bodies of about {@link #BULK_BODY_SIZE}
+     *
+     * @return number of documents in the file
+     */
+    long loadFile(File file) throws IOException {
+        long documents = 0;
+        byte[] body = new byte[2 * BULK_BODY_SIZE];
+        int length = 0;
+        // end of the last complete action/source line pair in body and number of pairs before it
+        int pairEnd = 0;
+        int pairs = 0;
+        long lines = 0;
+
+        try (InputStream in = open(file)) {
+            byte[] block = new byte[READ_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(block)) > 0) {
+                if (length + read > body.length) {
+                    body = Arrays.copyOf(body, 2 * (length + read));
+                }
+                System.arraycopy(block, 0, body, length, read);
+                for (int i = length; i < length + read; i++) {
+                    if (body[i] == '\n' && ++lines % 2 == 0) {
+                        pairEnd = i + 1;
+                        pairs++;
+                    }
+                }
+                length += read;
+
+                if (pairEnd >= BULK_BODY_SIZE) {
+                    importer.addBulk(body, 0, pairEnd, pairs);
+                    documents += pairs;
+                    // the bulk processor keeps a reference to the sent bytes, continue in a new buffer
+                    byte[] rest = new byte[Math.max(2 * BULK_BODY_SIZE, length - pairEnd)];
+                    System.arraycopy(body, pairEnd, rest, 0, length - pairEnd);
+                    body = rest;
+                    length -= pairEnd;
+                    pairEnd = 0;
+                    pairs = 0;
+                }
+            }
+        }
+
+        if (length > 0) {
+            if (body[length - 1] != '\n') {
+                if (length == body.length) {
+                    body = Arrays.copyOf(body, length + 1);
+                }
+                body[length++] = '\n';
+            }
+            int tailPairs = countPairs(body, length);
+            importer.addBulk(body, 0, length, tailPairs);
+            documents += tailPairs;
+        }
+        return documents;
+    }
+
+    private static int countPairs(byte[] body, int length) {
+        int lines = 0;
+        for (int i = 0; i < length; i++) {
+            if (body[i] == '\n') lines++;
+        }
+        return lines / 2;
+    }
+
+    private static InputStream open(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            return new GZIPInputStream(in, READ_BUFFER_SIZE);
+        }
+        return in;
+    }
+}
@@ -4,8 +4,11 @@ import de.komoot.photon.CommandLineArgs;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.SystemUtils;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.elasticsearch.common.xcontent.XContentType;
@@ -27,10 +30,8 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
+import java.text.SimpleDateFormat;
+import java.util.*;
 
 /**
  * Helper class to start/stop elasticsearch node and get elasticsearch clients
@@ -39,6 +40,15 @@ import java.util.List;
  */
 @Slf4j
 public class Server {
+    /**
+     * name searches and updates use, an alias of the index currently serving
+     */
+    public static final String INDEX_ALIAS = "photon";
+    /**
+     * prefix of the timestamped indices imports write into
+     */
+    public static final String INDEX_PREFIX = "photon_";
+
     private Node esNode;
 
     private Client esClient;
@@ -176,8 +186,23 @@ public class Server {
 
     }
 
+    /**
+     * deletes all photon indices and creates a new and empty one behind the {@link #INDEX_ALIAS alias}
+     */
     public void recreateIndex() throws IOException {
         deleteIndex();
+        switchAlias(createIndex());
+    }
+
+    /**
+     * creates a new and empty index named after the current time, the alias is not changed
+     *
+     * @return name of the new index
+     */
+    public String createIndex() throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String indexName = INDEX_PREFIX + format.format(new Date());
 
         final Client client = this.getClient();
         final InputStream mappings = Thread.currentThread().getContextClassLoader()
@@ -195,17 +220,86 @@ public class Server {
         if (shards != null) {
             settings.put("index", new JSONObject("{ \"number_of_shards\":" + shards + " }"));
         }
-        client.admin().indices().prepareCreate("photon").setSettings(settings.toString(), XContentType.JSON).execute().actionGet();
-        ;
-        client.admin().indices().preparePutMapping("photon").setType("place").setSource(mappingsJSON.toString(), XContentType.JSON).execute().actionGet();
-        log.info("mapping created: " + mappingsJSON.toString());
+        client.admin().indices().prepareCreate(indexName).setSettings(settings.toString(), XContentType.JSON).execute().actionGet();
+        client.admin().indices().preparePutMapping(indexName).setType("place").setSource(mappingsJSON.toString(), XContentType.JSON).execute().actionGet();
+        log.info("index " + indexName + " created, mapping: " + mappingsJSON.toString());
+        return indexName;
     }
 
+    /**
+     * @return true if the given index exists
+     */
+    public boolean indexExists(String indexName) {
+        return this.getClient().admin().indices().prepareExists(indexName).get().isExists();
+    }
+
+    /**
+     * @return the indices the {@link #INDEX_ALIAS alias} points to
+     */
+    public Set<String> getAliasedIndices() {
+        ImmutableOpenMap<String, List<AliasMetaData>> aliases = this.getClient().admin().indices().prepareGetAliases(INDEX_ALIAS).get().getAliases();
+        Set<String> indices = new HashSet<>();
+        for (Iterator<String> it = aliases.keysIt(); it.hasNext(); ) {
+            String index = it.next();
+            if (!aliases.get(index).isEmpty()) {
+                indices.add(index);
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * @return true if there is a concrete index named like the alias, created by older photon versions
+     */
+    private boolean hasLegacyIndex() {
+        return indexExists(INDEX_ALIAS) && !this.getClient().admin().indices().prepareAliasesExist(INDEX_ALIAS).get().exists();
+    }
+
+    /**
+     * points the {@link #INDEX_ALIAS alias} to the given index in a single atomic step, searches never see a missing index
+     *
+     * @param indexName the index that serves from now on
+     */
+    public void switchAlias(String indexName) {
+        IndicesAliasesRequestBuilder request = this.getClient().admin().indices().prepareAliases();
+        if (hasLegacyIndex()) {
+            // the alias cannot be created next to an index of the same name
+            request.removeIndex(INDEX_ALIAS);
+        }
+        Set<String> previous = getAliasedIndices();
+        for (String index : previous) {
+            request.removeAlias(index, INDEX_ALIAS);
+        }
+        request.addAlias(indexName, INDEX_ALIAS).get();
+        log.info("alias " + INDEX_ALIAS + " switched to " + indexName + (previous.isEmpty() ? "" : ", was " + previous));
+    }
+
+    /**
+     * deletes all timestamped indices the {@link #INDEX_ALIAS alias} does not point to
+     *
+     * @param keep index to keep although not aliased, e.g. an import in progress, may be null
+     */
+    public void deleteOldIndices(String keep) {
+        Set<String> aliased = getAliasedIndices();
+        for (String index : this.getClient().admin().indices().prepareGetIndex().setIndices(INDEX_PREFIX + "*").get().getIndices()) {
+            if (!aliased.contains(index) && !index.equals(keep)) {
+                this.getClient().admin().indices().prepareDelete(index).get();
+                log.info("deleted old index " + index);
+            }
+        }
+    }
+
+    /**
+     * deletes the indices behind the {@link #INDEX_ALIAS alias}
+     */
     public void deleteIndex() {
-        try {
-            this.getClient().admin().indices().prepareDelete("photon").execute().actionGet();
-        } catch (IndexNotFoundException e) {
-            // ignore
+        Set<String> indices = hasLegacyIndex() ? Collections.singleton(INDEX_ALIAS) : getAliasedIndices();
+        for (String index : indices) {
+            try {
+                this.getClient().admin().indices().prepareDelete(index).execute().actionGet();
+            } catch (IndexNotFoundException e) {
+                // ignore
+            }
         }
     }
 
@@ -3,46 +3,185 @@ package de.komoot.photon.elasticsearch;
 import de.komoot.photon.PhotonDoc;
 import de.komoot.photon.Utils;
 import lombok.extern.slf4j.Slf4j;
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Updater for elasticsearch
+ * <p/>
+ * Changes are sent by a {@link BulkProcessor} in bulks bounded by number of actions and payload size, so a large change set is never
+ * held in memory as a whole. At most one bulk is in flight while the next one is filled and adding blocks until it returned. Bulks are
+ * therefore executed in the order the changes were added, a delete is never overtaken by a later create of the same place.
+ * <p/>
+ * Documents may be added by several threads, they are converted in the calling thread. All documents are addressed by their place id.
  *
  * @author felix
  */
 @Slf4j
 public class Updater implements de.komoot.photon.Updater {
+    public static final int DEFAULT_BULK_ACTIONS = 5000;
+    public static final int DEFAULT_BULK_SIZE_MB = 5;
+
+    /**
+     * sets every field of params.address, null fields included
+     */
+    private static final String REPLACE_FIELDS_SCRIPT = "for (def field : params.address.entrySet()) { ctx._source[field.getKey()] = field.getValue(); }";
+
     private final Client esClient;
-    private BulkRequestBuilder bulkRequest;
     private final String[] languages;
+    private final int bulkActions;
+    private final ByteSizeValue bulkSize;
+
+    private BulkProcessor bulkProcessor;
+    private final AtomicLong actionCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong missingCount = new AtomicLong();
+    private final AtomicLong totalFailedCount = new AtomicLong();
 
     public Updater(Client esClient, String languages) {
+        this(esClient, languages, DEFAULT_BULK_ACTIONS, DEFAULT_BULK_SIZE_MB);
+    }
+
+    /**
+     * @param esClient
+     * @param languages   comma separated languages to index
+     * @param bulkActions maximum number of actions per bulk request
+     * @param bulkSizeMb  maximum payload size of a bulk request in megabytes
+     */
+    public Updater(Client esClient, String languages, int bulkActions, int bulkSizeMb) {
         this.esClient = esClient;
-        this.bulkRequest = esClient.prepareBulk();
         this.languages = languages.split(",");
+        this.bulkActions = Math.max(1, bulkActions);
+        this.bulkSize = new ByteSizeValue(Math.max(1, bulkSizeMb), ByteSizeUnit.MB);
+        this.bulkProcessor = createBulkProcessor();
+    }
+
+    private BulkProcessor createBulkProcessor() {
+        return BulkProcessor.builder(esClient, new BulkProcessor.Listener() {
+            @Override
+            public void beforeBulk(long executionId, BulkRequest request) {
+                log.debug(String.format("sending update bulk of %d actions, %d bytes", request.numberOfActions(), request.estimatedSizeInBytes()));
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+                if (!response.hasFailures()) return;
+
+                int failed = 0;
+                int missing = 0;
+                String firstFailure = null;
+                for (BulkItemResponse item : response.getItems()) {
+                    if (!item.isFailed()) continue;
+
+                    if (item.getOpType() == DocWriteRequest.OpType.UPDATE && item.getFailure().getStatus() == RestStatus.NOT_FOUND) {
+                        // address update of a document that is not in the index, e.g. imported with another id
+                        missing++;
+                        continue;
+                    }
+                    failed++;
+                    if (firstFailure == null) {
+                        firstFailure = "[" + item.getId() + "]: " + item.getFailureMessage();
+                    }
+                }
+                missingCount.addAndGet(missing);
+                if (failed > 0) {
+                    failedCount.addAndGet(failed);
+                    log.error(String.format("error while bulk update: %d of %d actions failed, first failure %s", failed, request.numberOfActions(), firstFailure));
+                }
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+                failedCount.addAndGet(request.numberOfActions());
+                log.error("error while bulk update: bulk of " + request.numberOfActions() + " actions failed", failure);
+            }
+        })
+                // a single bulk in flight keeps the order of the changes, the next add waits for it
+                .setConcurrentRequests(1)
+                .setBulkActions(bulkActions)
+                .setBulkSize(bulkSize)
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(100), 8))
+                .build();
     }
 
-    public void finish() {
-        this.updateDocuments();
+    /**
+     * sends the remaining changes, waits until all of them are written and refreshes the index, so they are visible to searches when it
+     * returns
+     */
+    public synchronized void finish() {
+        if (actionCount.get() == 0) {
+            log.warn("Update empty");
+            return;
+        }
+
+        try {
+            while (!this.bulkProcessor.awaitClose(1, TimeUnit.MINUTES)) {
+                log.info("waiting for update bulk requests to finish");
+            }
+        } catch (InterruptedException e) {
+            log.warn("interrupted while waiting for update bulk requests to finish", e);
+            Thread.currentThread().interrupt();
+        }
+
+        if (failedCount.get() > 0) {
+            log.error(String.format("bulk update finished, %d of %d actions failed", failedCount.get(), actionCount.get()));
+        }
+        if (missingCount.get() > 0) {
+            log.info(String.format("%d address updates skipped, their documents are not in the index", missingCount.get()));
+        }
+        // listeners notified after the update must not see the previous state, e.g. a cache filled again before the periodic refresh
+        this.esClient.admin().indices().prepareRefresh(Server.INDEX_ALIAS).get();
+        actionCount.set(0);
+        totalFailedCount.addAndGet(failedCount.getAndSet(0));
+        missingCount.set(0);
+        this.bulkProcessor = createBulkProcessor();
     }
 
+    /**
+     * updates the document if it is indexed already, creates it otherwise. Sent as upsert with the other bulk actions, so no lookup of
+     * the existing document is needed.
+     *
+     * @param updatedDoc
+     */
     @Override
     public void updateOrCreate(PhotonDoc updatedDoc) {
-        final boolean exists = this.esClient.get(this.esClient.prepareGet("photon", "place", String.valueOf(updatedDoc.getPlaceId())).request()).actionGet().isExists();
-        if (exists) {
-            this.update(updatedDoc);
-        } else {
-            this.create(updatedDoc);
+        try {
+            add(this.esClient.prepareUpdate(Server.INDEX_ALIAS, "place", String.valueOf(updatedDoc.getPlaceId()))
+                    .setDoc(Utils.convert(updatedDoc, this.languages)).setDocAsUpsert(true).request());
+        } catch (IOException e) {
+            log.error(String.format("upsert of doc [%s] failed", updatedDoc), e);
         }
     }
 
     public void create(PhotonDoc doc) {
         try {
-            this.bulkRequest.add(this.esClient.prepareIndex("photon", "place").setSource(Utils.convert(doc, this.languages)).setId(String.valueOf(doc.getPlaceId())));
+            add(this.esClient.prepareIndex(Server.INDEX_ALIAS, "place").setSource(Utils.convert(doc, this.languages)).setId(String.valueOf(doc.getPlaceId())).request());
         } catch (IOException e) {
             log.error(String.format("creation of new doc [%s] failed", doc), e);
         }
@@ -50,25 +189,76 @@ public class Updater implements de.komoot.photon.Updater {
 
     public void update(PhotonDoc doc) {
         try {
-            this.bulkRequest.add(this.esClient.prepareUpdate("photon", "place", String.valueOf(doc.getPlaceId())).setDoc(Utils.convert(doc, this.languages)));
+            add(this.esClient.prepareUpdate(Server.INDEX_ALIAS, "place", String.valueOf(doc.getPlaceId())).setDoc(Utils.convert(doc, this.languages)).request());
         } catch (IOException e) {
             log.error(String.format("update of new doc [%s] failed", doc), e);
         }
     }
 
-    public void delete(Long id) {
-        this.bulkRequest.add(this.esClient.prepareDelete("photon", "place", String.valueOf(id)));
+    /**
+     * update of the address fields. A partial update would merge the language maps of a field, so the fields are replaced by a script.
+     * Documents not in the index are skipped, they are not counted as failed.
+     */
+    @Override
+    public void updateAddress(PhotonDoc doc) {
+        try {
+            Map<String, Object> params = new HashMap<>();
+            params.put("address", XContentHelper.convertToMap(Utils.convertAddress(doc, this.languages).bytes(), false, XContentType.JSON).v2());
+            add(this.esClient.prepareUpdate(Server.INDEX_ALIAS, "place", String.valueOf(doc.getPlaceId()))
+                    .setScript(new Script(ScriptType.INLINE, "painless", REPLACE_FIELDS_SCRIPT, params)).request());
+        } catch (IOException e) {
+            log.error(String.format("address update of doc [%s] failed", doc), e);
+        }
     }
 
-    private void updateDocuments() {
-        if (this.bulkRequest.numberOfActions() == 0) {
-            log.warn("Update empty");
-            return;
+    /**
+     * looks up the indexed names of all documents with a single multi get
+     */
+    @Override
+    public Set<Long> getRenamedPlaceIds(Collection<PhotonDoc> docs) {
+        Set<Long> renamed = new HashSet<>();
+        if (docs.isEmpty()) {
+            return renamed;
         }
-        BulkResponse bulkResponse = bulkRequest.execute().actionGet();
-        if (bulkResponse.hasFailures()) {
-            log.error("error while bulk update: " + bulkResponse.buildFailureMessage());
+
+        FetchSourceContext names = new FetchSourceContext(true, new String[]{"name"}, null);
+        MultiGetRequestBuilder request = this.esClient.prepareMultiGet();
+        for (PhotonDoc doc : docs) {
+            request.add(new MultiGetRequest.Item(Server.INDEX_ALIAS, "place", String.valueOf(doc.getPlaceId())).fetchSourceContext(names));
+        }
+        MultiGetItemResponse[] responses = request.get().getResponses();
+        int i = 0;
+        for (PhotonDoc doc : docs) {
+            MultiGetItemResponse response = responses[i++];
+            if (response.isFailed() || !response.getResponse().isExists()) {
+                renamed.add(doc.getPlaceId());
+                continue;
+            }
+            Object indexedNames = response.getResponse().getSource().get("name");
+            Map<String, String> docNames = Utils.getIndexedNames(doc.getName(), this.languages);
+            if (indexedNames == null ? !docNames.isEmpty() : !indexedNames.equals(docNames)) {
+                renamed.add(doc.getPlaceId());
+            }
         }
-        this.bulkRequest = this.esClient.prepareBulk();
+        return renamed;
+    }
+
+    /**
+     * @return number of actions that could not be written by the updates finished since this updater was created
+     */
+    public long getFailedCount() {
+        return totalFailedCount.get();
+    }
+
+    public void delete(Long id) {
+        add(this.esClient.prepareDelete(Server.INDEX_ALIAS, "place", String.valueOf(id)).request());
+    }
+
+    /**
+     * the bulk processor is synchronized itself, the lock only guards against adding while {@link #finish()} replaces it
+     */
+    private synchronized void add(DocWriteRequest request) {
+        this.bulkProcessor.add(request);
+        actionCount.incrementAndGet();
     }
 }
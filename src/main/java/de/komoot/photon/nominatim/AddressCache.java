@@ -0,0 +1,67 @@
+package de.komoot.photon.nominatim;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import de.komoot.photon.nominatim.model.AddressRow;
+
+import java.util.Map;
+
+/**
+ * size-bounded cache of parsed address rows keyed by their place id.
+ * <p/>
+ * Most places share the same few cities, states and boundaries as address, so keeping them around saves fetching and parsing them
+ * again for every child place. Used by the {@link NominatimConnector} during imports and updates, the {@link NominatimUpdater} evicts
+ * every place it updates.
+ */
+public class AddressCache {
+    public static final int DEFAULT_SIZE = 100000;
+
+    private final Cache<Long, AddressRow> cache;
+
+    /**
+     * @param maximumSize maximum number of address rows kept, 0 disables caching
+     */
+    public AddressCache(long maximumSize) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    /**
+     * @param placeIds place ids to look up
+     * @return all cached rows of the given place ids, a lookup counts as hit or miss
+     */
+    public Map<Long, AddressRow> getAllPresent(Iterable<Long> placeIds) {
+        return cache.getAllPresent(placeIds);
+    }
+
+    public void put(AddressRow row) {
+        cache.put(row.getPlaceId(), row);
+    }
+
+    /**
+     * remove a place whose data changed in nominatim
+     *
+     * @param placeId
+     */
+    public void invalidate(long placeId) {
+        cache.invalidate(placeId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return hit/miss/eviction counters for progress logs
+     */
+    @Override
+    public String toString() {
+        CacheStats stats = cache.stats();
+        return String.format("address cache: %d entries, %d hits, %d misses, %d evictions [%.1f%% hit rate]", cache.size(), stats.hitCount(),
+                stats.missCount(), stats.evictionCount(), stats.hitRate() * 100);
+    }
+}
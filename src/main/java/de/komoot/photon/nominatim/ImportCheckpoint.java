@@ -0,0 +1,203 @@
+package de.komoot.photon.nominatim;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * progress of a nominatim import, persisted to a small json file so that an interrupted import can be resumed.
+ * <p/>
+ * The import is planned as a list of {@link NominatimConnector.SectorRange sector ranges}. A range is marked done once all of its
+ * documents have been acknowledged by the importer, a resumed import only reads the remaining ranges.
+ */
+@Slf4j
+public class ImportCheckpoint {
+    public static final String FILE_NAME = "import_checkpoint.json";
+
+    private final File file;
+    private final String indexName;
+    private final String languages;
+    private final String countryCodes;
+    /**
+     * planned ranges in reading order with their done flag
+     */
+    private final Map<NominatimConnector.SectorRange, Boolean> ranges = new LinkedHashMap<>();
+    /**
+     * index settings the index was served with before the import suspended them, null if not known
+     */
+    private Map<String, String> servingSettings;
+
+    /**
+     * @param file         file the checkpoint is saved to
+     * @param indexName    index the import writes into
+     * @param languages    imported languages, a resumed import must use the same
+     * @param countryCodes country code filter of the import, a resumed import must use the same
+     */
+    public ImportCheckpoint(File file, String indexName, String languages, String countryCodes) {
+        this.file = file;
+        this.indexName = indexName;
+        this.languages = languages;
+        this.countryCodes = countryCodes;
+    }
+
+    /**
+     * @param dataDirectory photon data directory
+     * @return the checkpoint file inside the photon_data directory
+     */
+    public static File getFile(String dataDirectory) {
+        return new File(new File(dataDirectory, "photon_data"), FILE_NAME);
+    }
+
+    /**
+     * @param file checkpoint file written by {@link #save()}
+     * @return the checkpoint or null if the file does not exist
+     */
+    public static ImportCheckpoint load(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        JSONObject json = new JSONObject(FileUtils.readFileToString(file, StandardCharsets.UTF_8));
+        ImportCheckpoint checkpoint = new ImportCheckpoint(file, json.getString("index"), json.getString("languages"),
+                json.getString("country_codes"));
+        JSONArray ranges = json.getJSONArray("ranges");
+        for (int i = 0; i < ranges.length(); i++) {
+            JSONObject range = ranges.getJSONObject(i);
+            checkpoint.ranges.put(new NominatimConnector.SectorRange(range.getString("table"), range.getInt("first"), range.getInt("last")),
+                    range.getBoolean("done"));
+        }
+        // missing in checkpoints of older versions
+        JSONObject servingSettings = json.optJSONObject("serving_settings");
+        if (servingSettings != null) {
+            checkpoint.servingSettings = new LinkedHashMap<>();
+            Iterator<String> keys = servingSettings.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                checkpoint.servingSettings.put(key, servingSettings.getString(key));
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * @return true if an import with the given parameters can continue from this checkpoint
+     */
+    public boolean matches(String languages, String countryCodes) {
+        return this.languages.equals(languages) && this.countryCodes.equals(countryCodes);
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    public String getLanguages() {
+        return languages;
+    }
+
+    public String getCountryCodes() {
+        return countryCodes;
+    }
+
+    /**
+     * @return index settings to restore after the import, null if the checkpoint does not know them
+     */
+    public synchronized Map<String, String> getServingSettings() {
+        return servingSettings;
+    }
+
+    /**
+     * remembers the index settings the import suspended, so that a resumed import can restore them
+     */
+    public synchronized void setServingSettings(Map<String, String> servingSettings) {
+        this.servingSettings = new LinkedHashMap<>(servingSettings);
+        save();
+    }
+
+    public synchronized boolean hasRanges() {
+        return !ranges.isEmpty();
+    }
+
+    /**
+     * plans a new import, all ranges are open
+     */
+    public synchronized void setRanges(List<NominatimConnector.SectorRange> planned) {
+        ranges.clear();
+        for (NominatimConnector.SectorRange range : planned) {
+            ranges.put(range, false);
+        }
+        save();
+    }
+
+    /**
+     * @return all ranges not done yet in reading order
+     */
+    public synchronized List<NominatimConnector.SectorRange> getOpenRanges() {
+        List<NominatimConnector.SectorRange> open = new ArrayList<>();
+        for (Map.Entry<NominatimConnector.SectorRange, Boolean> e : ranges.entrySet()) {
+            if (!e.getValue()) {
+                open.add(e.getKey());
+            }
+        }
+        return open;
+    }
+
+    public synchronized int getRangeCount() {
+        return ranges.size();
+    }
+
+    public synchronized void markDone(NominatimConnector.SectorRange range) {
+        ranges.put(range, true);
+        save();
+    }
+
+    /**
+     * writes the checkpoint to a temporary file first, so a crash never leaves a truncated checkpoint behind
+     */
+    public synchronized void save() {
+        JSONArray rangesJson = new JSONArray();
+        for (Map.Entry<NominatimConnector.SectorRange, Boolean> e : ranges.entrySet()) {
+            rangesJson.put(new JSONObject()
+                    .put("table", e.getKey().table)
+                    .put("first", e.getKey().first)
+                    .put("last", e.getKey().last)
+                    .put("done", e.getValue()));
+        }
+        JSONObject json = new JSONObject()
+                .put("index", indexName)
+                .put("languages", languages)
+                .put("country_codes", countryCodes)
+                .put("ranges", rangesJson);
+        if (servingSettings != null) {
+            json.put("serving_settings", new JSONObject(servingSettings));
+        }
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try {
+            FileUtils.writeStringToFile(tmpFile, json.toString(1), StandardCharsets.UTF_8);
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("cannot write import checkpoint " + file, e);
+        }
+    }
+
+    /**
+     * removes the checkpoint after a complete import
+     */
+    public synchronized void delete() {
+        if (file.exists() && !file.delete()) {
+            log.warn("cannot delete import checkpoint " + file);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package de.komoot.photon.nominatim;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * consumes the change feed installed by {@link NominatimUpdater#installChangeFeed()}.
+ * <p/>
+ * A dedicated connection listens on {@link NominatimUpdater#CHANGE_CHANNEL}, every notification drains the queue, so changed places
+ * reach the index within seconds. The queue is also drained periodically in case a notification was lost while reconnecting.
+ */
+@Slf4j
+public class NominatimChangeListener implements Runnable {
+    public static final int DEFAULT_BATCH_SIZE = 5000;
+
+    private static final long POLL_MILLIS = 500;
+    private static final long DRAIN_INTERVAL_MILLIS = 60 * 1000;
+    private static final long RECONNECT_MILLIS = 10 * 1000;
+
+    private final NominatimUpdater updater;
+    private final String url;
+    private final Properties connectionProperties = new Properties();
+    private final int batchSize;
+
+    private volatile boolean running = true;
+
+    public NominatimChangeListener(NominatimUpdater updater, String host, int port, String database, String username, String password,
+                                   int batchSize) {
+        this.updater = updater;
+        this.url = String.format("jdbc:postgresql://%s:%d/%s", host, port, database);
+        connectionProperties.setProperty("user", username);
+        if (password != null) {
+            connectionProperties.setProperty("password", password);
+        }
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * starts consuming the feed on a daemon thread
+     */
+    public void start() {
+        Thread thread = new Thread(this, "nominatim-change-feed");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try (Connection connection = new org.postgresql.Driver().connect(url, connectionProperties)) {
+                listen(connection);
+            } catch (SQLException | RuntimeException e) {
+                log.error("change feed failed, reconnecting in " + RECONNECT_MILLIS / 1000 + " seconds", e);
+                sleep(RECONNECT_MILLIS);
+            }
+        }
+    }
+
+    private void listen(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("LISTEN " + NominatimUpdater.CHANGE_CHANNEL);
+            log.info("listening for changes on channel " + NominatimUpdater.CHANGE_CHANNEL);
+
+            // changes queued while not listening
+            drain();
+            long lastDrain = System.currentTimeMillis();
+            while (running) {
+                // the driver only receives notifications while talking to the server
+                statement.execute("SELECT 1");
+                PGNotification[] notifications = ((PGConnection) connection).getNotifications();
+                if ((notifications != null && notifications.length > 0) || System.currentTimeMillis() - lastDrain > DRAIN_INTERVAL_MILLIS) {
+                    drain();
+                    lastDrain = System.currentTimeMillis();
+                } else {
+                    sleep(POLL_MILLIS);
+                }
+            }
+        }
+    }
+
+    /**
+     * updates queued places until the queue is empty
+     */
+    private void drain() {
+        while (running && updater.updateFromQueue(batchSize) > 0) {
+            // more changes may have been queued while updating
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
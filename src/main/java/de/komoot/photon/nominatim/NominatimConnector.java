@@ -14,15 +14,17 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.dbcp.BasicDataSource;
 import org.postgis.jts.JtsWrapper;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.MessageFormat;
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -125,8 +127,16 @@ class NominatimResult {
  */
 @Slf4j
 public class NominatimConnector {
+    static final String PLACEX = "placex";
+    static final String OSMLINE = "location_property_osmline";
+    /**
+     * minimum number of sector ranges per table, the granularity of {@link ImportCheckpoint}s
+     */
+    private static final int MIN_SECTOR_RANGES = 256;
+
+    private final BasicDataSource dataSource;
     private final JdbcTemplate template;
-    private Map<String, Map<String, String>> countryNames;
+    private volatile Map<String, Map<String, String>> countryNames;
     /**
      * Maps a row from location_property_osmline (address interpolation lines) to a photon doc.
      */
@@ -208,23 +218,67 @@ public class NominatimConnector {
     private final String selectColsPlaceX = "place_id, osm_type, osm_id, class, type, name, housenumber, postcode, extratags, ST_Envelope(geometry) AS bbox, parent_place_id, linked_place_id, rank_search, importance, country_code, centroid";
     private final String selectColsOsmline = "place_id, osm_id, parent_place_id, startnumber, endnumber, interpolationtype, postcode, country_code, linegeo";
     private final String selectColsAddress = "p.place_id, p.osm_type, p.osm_id, p.name, p.class, p.type, p.rank_address, p.admin_level, p.postcode, p.extratags->'place' as place";
+    /**
+     * maps a placex row joined for the address hierarchy of a place
+     */
+    private final RowMapper<AddressRow> addressRowMapper = new RowMapper<AddressRow>() {
+        @Override
+        public AddressRow mapRow(ResultSet rs, int rowNum) throws SQLException {
+            Integer adminLevel = rs.getInt("admin_level");
+            if (rs.wasNull()) {
+                adminLevel = null;
+            }
+            return new AddressRow(
+                    rs.getLong("place_id"),
+                    DBUtils.getMap(rs, "name"),
+                    rs.getString("class"),
+                    rs.getString("type"),
+                    rs.getInt("rank_address"),
+                    adminLevel,
+                    rs.getString("postcode"),
+                    rs.getString("place"),
+                    rs.getString("osm_type"),
+                    rs.getLong("osm_id")
+            );
+        }
+    };
     private Importer importer;
+    /**
+     * number of rows whose address hierarchy is resolved with a single query during {@link #readEntireDatabase}, 1 disables batching
+     */
+    private int addressBatchSize = 1000;
+    private AddressCache addressCache = new AddressCache(AddressCache.DEFAULT_SIZE);
+    /**
+     * number of threads reading placex and location_property_osmline in parallel during {@link #readEntireDatabase}
+     */
+    private int importThreads = 1;
+    private ImportCheckpoint checkpoint;
 
     private Map<String, String> getCountryNames(String countrycode) {
         if (countryNames == null) {
-            countryNames = new HashMap<String, Map<String, String>>();
-            template.query("SELECT country_code, name FROM country_name;", new RowCallbackHandler() {
-                        @Override
-                        public void processRow(ResultSet rs) throws SQLException {
-                            countryNames.put(rs.getString("country_code"), DBUtils.getMap(rs, "name"));
-                        }
-                    }
-            );
+            loadCountryNames();
         }
 
         return countryNames.get(countrycode);
     }
 
+    /**
+     * the row mappers run concurrently during imports, so the names are loaded once and published as a whole
+     */
+    private synchronized void loadCountryNames() {
+        if (countryNames != null) return;
+
+        final Map<String, Map<String, String>> names = new HashMap<String, Map<String, String>>();
+        template.query("SELECT country_code, name FROM country_name;", new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        names.put(rs.getString("country_code"), DBUtils.getMap(rs, "name"));
+                    }
+                }
+        );
+        countryNames = names;
+    }
+
     /**
      * @param host     database host
      * @param port     database port
@@ -233,7 +287,7 @@ public class NominatimConnector {
      * @param password db username's password
      */
     public NominatimConnector(String host, int port, String database, String username, String password) {
-        BasicDataSource dataSource = new BasicDataSource();
+        dataSource = new BasicDataSource();
 
         dataSource.setUrl(String.format("jdbc:postgres_jts://%s:%d/%s", host, port, database));
         dataSource.setUsername(username);
@@ -249,6 +303,40 @@ public class NominatimConnector {
         this.importer = importer;
     }
 
+    public AddressCache getAddressCache() {
+        return addressCache;
+    }
+
+    public void setAddressCache(AddressCache addressCache) {
+        this.addressCache = addressCache;
+    }
+
+    public void setAddressBatchSize(int addressBatchSize) {
+        this.addressBatchSize = Math.max(1, addressBatchSize);
+    }
+
+    public void setImportThreads(int importThreads) {
+        this.importThreads = Math.max(1, importThreads);
+        // every reader keeps its cursor open while looking up addresses on a second connection
+        setMaxConnections(2 * this.importThreads + 1);
+    }
+
+    /**
+     * @param connections number of database connections that may be used at the same time, at least 8
+     */
+    public void setMaxConnections(int connections) {
+        connections = Math.max(8, connections);
+        dataSource.setMaxActive(connections);
+        dataSource.setMaxIdle(connections);
+    }
+
+    /**
+     * @param checkpoint progress of the import is saved to, null disables checkpoints
+     */
+    public void setCheckpoint(ImportCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
     public List<PhotonDoc> getByPlaceId(long placeId) {
         NominatimResult result = template.queryForObject("SELECT " + selectColsPlaceX + " FROM placex WHERE place_id = ?", new Object[] { placeId }, placeRowMapper);
         completePlace(result.getBaseDoc());
@@ -261,65 +349,399 @@ public class NominatimConnector {
         return result.getDocsWithHousenumber();
     }
 
+    /**
+     * @param placeId place that might be part of the address of other places
+     * @return places having the place in their address, directly or through the parent of a POI
+     */
+    public List<Long> getDependentPlaceIds(long placeId) {
+        return template.queryForList("SELECT place_id FROM place_addressline WHERE address_place_id = ? and isaddress and place_id != address_place_id"
+                + " UNION SELECT place_id FROM placex WHERE parent_place_id = ? and rank_search > 28"
+                + " UNION SELECT p.place_id FROM placex p, place_addressline pa WHERE pa.address_place_id = ? and pa.isaddress and p.parent_place_id = pa.place_id and p.rank_search > 28",
+                Long.class, placeId, placeId, placeId);
+    }
+
+    /**
+     * @param placeId place that might be part of the address of interpolations
+     * @return interpolations having the place in their address through their parent
+     */
+    public List<Long> getDependentInterpolationIds(long placeId) {
+        return template.queryForList("SELECT place_id FROM location_property_osmline WHERE parent_place_id = ?"
+                + " UNION SELECT o.place_id FROM location_property_osmline o, place_addressline pa WHERE pa.address_place_id = ? and pa.isaddress and o.parent_place_id = pa.place_id",
+                Long.class, placeId, placeId);
+    }
+
+    /**
+     * set-based variant of {@link #getByPlaceId(long)}
+     */
+    public List<PhotonDoc> getByPlaceIds(Collection<Long> placeIds) {
+        return completePlaces(template.query("SELECT " + selectColsPlaceX + " FROM placex WHERE place_id = ANY(?)", new PlaceIdArraySetter(placeIds), placeRowMapper));
+    }
+
+    /**
+     * set-based variant of {@link #getInterpolationsByPlaceId(long)}
+     */
+    public List<PhotonDoc> getInterpolationsByPlaceIds(Collection<Long> placeIds) {
+        return completePlaces(template.query("SELECT " + selectColsOsmline + " FROM location_property_osmline WHERE place_id = ANY(?)", new PlaceIdArraySetter(placeIds),
+                osmlineRowMapper));
+    }
+
+    private List<PhotonDoc> completePlaces(List<NominatimResult> results) {
+        List<PhotonDoc> baseDocs = new ArrayList<>(results.size());
+        for (NominatimResult result : results) {
+            baseDocs.add(result.getBaseDoc());
+        }
+        List<List<AddressRow>> addresses = getAddresses(baseDocs);
+        List<PhotonDoc> docs = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            completePlace(baseDocs.get(i), addresses.get(i));
+            docs.addAll(results.get(i).getDocsWithHousenumber());
+        }
+        return docs;
+    }
+
     List<AddressRow> getAddresses(PhotonDoc doc) {
-        RowMapper<AddressRow> rowMapper = new RowMapper<AddressRow>() {
-            @Override
-            public AddressRow mapRow(ResultSet rs, int rowNum) throws SQLException {
-                Integer adminLevel = rs.getInt("admin_level");
-                if (rs.wasNull()) {
-                    adminLevel = null;
+        long placeId = getAddressPlaceId(doc);
+
+        List<Long> addressPlaceIds = template.queryForList("SELECT pa.address_place_id FROM placex p, place_addressline pa WHERE p.place_id = pa.address_place_id and pa.place_id = ? and pa.cached_rank_address > 4 and pa.address_place_id != ? and pa.isaddress order by rank_address desc,fromarea desc,distance asc,rank_search desc", Long.class, placeId, placeId);
+
+        if (isPoi(doc)) {
+            // need to add the term for the parent place ID itself
+            addressPlaceIds.add(0, placeId);
+        }
+
+        return getAddressRows(Collections.singletonList(addressPlaceIds)).get(0);
+    }
+
+    /**
+     * set-based variant of {@link #getAddresses(PhotonDoc)}: resolves the address hierarchy of many documents with one query
+     *
+     * @param docs documents to resolve
+     * @return address rows of each document, in the order of the documents and in the same order {@link #getAddresses(PhotonDoc)} returns them
+     */
+    List<List<AddressRow>> getAddresses(List<PhotonDoc> docs) {
+        final Map<Long, List<Long>> addressLines = new HashMap<>();
+        for (PhotonDoc doc : docs) {
+            addressLines.put(getAddressPlaceId(doc), new ArrayList<Long>());
+        }
+        if (addressLines.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        template.query("SELECT pa.place_id, pa.address_place_id FROM placex p, place_addressline pa WHERE p.place_id = pa.address_place_id and pa.place_id = ANY(?) and pa.cached_rank_address > 4 and pa.address_place_id != pa.place_id and pa.isaddress order by pa.place_id,rank_address desc,fromarea desc,distance asc,rank_search desc",
+                new PlaceIdArraySetter(addressLines.keySet()), new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        addressLines.get(rs.getLong("place_id")).add(rs.getLong("address_place_id"));
+                    }
+                });
+
+        return getAddressRows(getAddressPlaceIds(docs, addressLines));
+    }
+
+    /**
+     * builds the address place ids of each document from the address lines of the places they are addressed by. A POI and its parent
+     * share the parent's address lines, only the POI's list starts with the parent itself.
+     *
+     * @param addressLines address place ids keyed by {@link #getAddressPlaceId(PhotonDoc)}, not modified
+     */
+    static List<List<Long>> getAddressPlaceIds(List<PhotonDoc> docs, Map<Long, List<Long>> addressLines) {
+        List<List<Long>> addressPlaceIds = new ArrayList<>(docs.size());
+        for (PhotonDoc doc : docs) {
+            long placeId = getAddressPlaceId(doc);
+            List<Long> lines = addressLines.get(placeId);
+            if (isPoi(doc)) {
+                List<Long> ids = new ArrayList<>(lines.size() + 1);
+                // need to add the term for the parent place ID itself
+                ids.add(placeId);
+                ids.addAll(lines);
+                addressPlaceIds.add(ids);
+            } else {
+                addressPlaceIds.add(lines);
+            }
+        }
+        return addressPlaceIds;
+    }
+
+    /**
+     * turns lists of address place ids into lists of address rows, taking rows from the {@link #addressCache} where possible and
+     * fetching all others with a single query. Place ids that do not exist in placex are skipped.
+     */
+    private List<List<AddressRow>> getAddressRows(List<List<Long>> addressPlaceIds) {
+        Set<Long> allIds = new HashSet<>();
+        for (List<Long> ids : addressPlaceIds) {
+            allIds.addAll(ids);
+        }
+
+        final Map<Long, AddressRow> rows = new HashMap<>(addressCache.getAllPresent(allIds));
+        allIds.removeAll(rows.keySet());
+        if (!allIds.isEmpty()) {
+            template.query("SELECT " + selectColsAddress + " FROM placex p WHERE p.place_id = ANY(?)", new PlaceIdArraySetter(allIds), new RowCallbackHandler() {
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    AddressRow row = addressRowMapper.mapRow(rs, 0);
+                    rows.put(row.getPlaceId(), row);
+                    addressCache.put(row);
+                }
+            });
+        }
+
+        List<List<AddressRow>> result = new ArrayList<>(addressPlaceIds.size());
+        for (List<Long> ids : addressPlaceIds) {
+            List<AddressRow> terms = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                AddressRow row = rows.get(id);
+                if (row != null) {
+                    terms.add(row);
                 }
-                return new AddressRow(
-                        rs.getLong("place_id"),
-                        DBUtils.getMap(rs, "name"),
-                        rs.getString("class"),
-                        rs.getString("type"),
-                        rs.getInt("rank_address"),
-                        adminLevel,
-                        rs.getString("postcode"),
-                        rs.getString("place"),
-                        rs.getString("osm_type"),
-                        rs.getLong("osm_id")
-                );
             }
-        };
+            result.add(terms);
+        }
+        return result;
+    }
+
+    private static boolean isPoi(PhotonDoc doc) {
+        return doc.getRankSearch() > 28;
+    }
 
-        boolean isPoi = doc.getRankSearch() > 28;
-        long placeId = (isPoi) ? doc.getParentPlaceId() : doc.getPlaceId();
+    /**
+     * @return the place id whose address lines make up the address of the document, the parent for POIs
+     */
+    private static long getAddressPlaceId(PhotonDoc doc) {
+        return isPoi(doc) ? doc.getParentPlaceId() : doc.getPlaceId();
+    }
 
-        List<AddressRow> terms = template.query("SELECT " + selectColsAddress + " FROM placex p, place_addressline pa WHERE p.place_id = pa.address_place_id and pa.place_id = ? and pa.cached_rank_address > 4 and pa.address_place_id != ? and pa.isaddress order by rank_address desc,fromarea desc,distance asc,rank_search desc", new Object[]{placeId, placeId}, rowMapper);
+    /**
+     * binds a set of place ids as bigint array to the first parameter, to be used with {@code place_id = ANY(?)}
+     */
+    static class PlaceIdArraySetter implements PreparedStatementSetter {
+        private final Long[] placeIds;
 
-        if (isPoi) {
-            // need to add the term for the parent place ID itself
-            terms.addAll(0, template.query("SELECT " + selectColsAddress + " FROM placex p WHERE p.place_id = ?", new Object[]{placeId}, rowMapper));
+        PlaceIdArraySetter(Collection<Long> placeIds) {
+            this.placeIds = placeIds.toArray(new Long[placeIds.size()]);
         }
 
-        return terms;
+        @Override
+        public void setValues(PreparedStatement ps) throws SQLException {
+            ps.setArray(1, ps.getConnection().createArrayOf("int8", placeIds));
+        }
     }
 
-    private static final PhotonDoc FINAL_DOCUMENT = new PhotonDoc(0, null, 0, null, null, null, null, null, null, 0, 0, null, null, 0, 0);
+    /**
+     * documents read from the database, handed over to the import thread
+     */
+    private static class ImportBatch {
+        final List<PhotonDoc> docs;
+        /**
+         * set on the last batch of a range, all documents of the range have been added once this batch is
+         */
+        final SectorRange completedRange;
+
+        ImportBatch(List<PhotonDoc> docs, SectorRange completedRange) {
+            this.docs = docs;
+            this.completedRange = completedRange;
+        }
+    }
 
-    private class ImportThread implements Runnable {
-        private final BlockingQueue<PhotonDoc> documents;
+    /**
+     * marks the end of the import, compared by identity
+     */
+    private static final ImportBatch FINAL_BATCH = new ImportBatch(Collections.<PhotonDoc>emptyList(), null);
 
-        public ImportThread(BlockingQueue<PhotonDoc> documents) {
+    private class ImportThread implements Runnable {
+        private final BlockingQueue<ImportBatch> documents;
+        /**
+         * completed ranges waiting for the importer to acknowledge all documents added before them
+         */
+        private final Deque<Map.Entry<Long, SectorRange>> pendingRanges = new ArrayDeque<>();
+        private long addedCount = 0;
+
+        public ImportThread(BlockingQueue<ImportBatch> documents) {
             this.documents = documents;
         }
 
         @Override
         public void run() {
             while (true) {
-                PhotonDoc doc;
+                ImportBatch batch;
                 try {
-                    doc = documents.take();
-                    if (doc == FINAL_DOCUMENT)
+                    batch = documents.take();
+                    if (batch == FINAL_BATCH)
                         break;
-                    importer.add(doc);
+                    for (PhotonDoc doc : batch.docs) {
+                        importer.add(doc);
+                    }
+                    addedCount += batch.docs.size();
+                    if (batch.completedRange != null) {
+                        pendingRanges.add(new AbstractMap.SimpleImmutableEntry<>(addedCount, batch.completedRange));
+                    }
+                    checkpointAcknowledgedRanges();
                 } catch (InterruptedException e) {
                     log.info("interrupted exception ", e);
                 }
             }
             importer.finish();
+            checkpointAcknowledgedRanges();
+        }
+
+        private void checkpointAcknowledgedRanges() {
+            if (checkpoint == null) {
+                pendingRanges.clear();
+                return;
+            }
+
+            long acknowledged = importer.getAcknowledgedCount();
+            while (!pendingRanges.isEmpty() && pendingRanges.peek().getKey() <= acknowledged) {
+                checkpoint.markDone(pendingRanges.poll().getValue());
+            }
+        }
+    }
+
+    /**
+     * an inclusive range of geometry sectors of one table, the unit of work of a {@link RangeReader} and of the {@link ImportCheckpoint}
+     */
+    static class SectorRange {
+        final String table;
+        final int first;
+        final int last;
+
+        SectorRange(String table, int first, int last) {
+            this.table = table;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SectorRange)) return false;
+            SectorRange other = (SectorRange) o;
+            return first == other.first && last == other.last && table.equals(other.table);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(table, first, last);
+        }
+
+        /**
+         * @return true for the last range of a table, which also covers the rows without a geometry sector
+         */
+        boolean includesNullSectors() {
+            return last == Integer.MAX_VALUE;
+        }
+
+        @Override
+        public String toString() {
+            return table + " [" + first + ", " + last + "]";
+        }
+    }
+
+    /**
+     * splits the geometry sectors from first to last (inclusive) into at most the given number of equally wide ranges
+     */
+    static List<SectorRange> splitSectors(String table, int first, int last, int parts) {
+        long span = (long) last - first + 1;
+        parts = (int) Math.max(1, Math.min(parts, span));
+
+        List<SectorRange> ranges = new ArrayList<>(parts);
+        for (int i = 0; i < parts; i++) {
+            ranges.add(new SectorRange(table, (int) (first + span * i / parts), (int) (first + span * (i + 1) / parts - 1)));
+        }
+        return ranges;
+    }
+
+    private List<SectorRange> getSectorRanges(String table, int parts) {
+        Map<String, Object> bounds = template.queryForMap("SELECT min(geometry_sector) AS first, max(geometry_sector) AS last FROM " + table);
+        return planSectorRanges(table, (Number) bounds.get("first"), (Number) bounds.get("last"), parts);
+    }
+
+    /**
+     * splits the geometry sectors of a table into ranges, the last range is unbounded so that it also reads the rows without a sector
+     *
+     * @param first smallest sector of the table, null if no row has a sector
+     * @param last  largest sector of the table
+     */
+    static List<SectorRange> planSectorRanges(String table, Number first, Number last, int parts) {
+        if (first == null) {
+            return Collections.singletonList(new SectorRange(table, Integer.MAX_VALUE, Integer.MAX_VALUE));
+        }
+        List<SectorRange> ranges = splitSectors(table, first.intValue(), last.intValue(), parts);
+        SectorRange lastRange = ranges.get(ranges.size() - 1);
+        ranges.set(ranges.size() - 1, new SectorRange(table, lastRange.first, Integer.MAX_VALUE));
+        return ranges;
+    }
+
+    /**
+     * state shared by all readers of one import
+     */
+    private static class ImportProgress {
+        final BlockingQueue<ImportBatch> documents;
+        final long startMillis = System.currentTimeMillis();
+        final AtomicLong counter = new AtomicLong();
+        private final AtomicBoolean aborted = new AtomicBoolean();
+
+        ImportProgress(BlockingQueue<ImportBatch> documents) {
+            this.documents = documents;
+        }
+
+        /**
+         * @return true for the first call only
+         */
+        boolean abort() {
+            return aborted.compareAndSet(false, true);
+        }
+
+        boolean isAborted() {
+            return aborted.get();
+        }
+    }
+
+    /**
+     * reads one range of geometry sectors on its own connection and hands the resulting documents over to the import thread
+     */
+    private class RangeReader implements Callable<Void> {
+        private final String sql;
+        private final SectorRange range;
+        private final RowMapper<NominatimResult> rowMapper;
+        private final ImportProgress progress;
+
+        RangeReader(String sql, SectorRange range, RowMapper<NominatimResult> rowMapper, ImportProgress progress) {
+            this.sql = sql;
+            this.range = range;
+            this.rowMapper = rowMapper;
+            this.progress = progress;
+        }
+
+        @Override
+        public Void call() {
+            final List<NominatimResult> window = new ArrayList<>(addressBatchSize);
+            try {
+                template.query(sql, new Object[]{range.first, range.last, range.includesNullSectors()}, new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        if (progress.isAborted()) {
+                            throw new IllegalStateException("import aborted");
+                        }
+
+                        // turns a row into a photon document that gathers all de-normalised information
+                        NominatimResult docs = rowMapper.mapRow(rs, 0);
+
+                        if (!docs.isUsefulForIndex()) return; // do not import document
+
+                        window.add(docs);
+                        if (window.size() >= addressBatchSize) {
+                            importWindow(window, progress, null);
+                        }
+                    }
+                });
+                importWindow(window, progress, range);
+            } catch (RuntimeException e) {
+                if (progress.abort()) {
+                    log.error("failed to read sectors " + range, e);
+                }
+                throw e;
+            }
+            return null;
         }
     }
 
@@ -339,100 +761,152 @@ public class NominatimConnector {
     }
 
     /**
-     * parses every relevant row in placex, creates a corresponding document and calls the {@link #importer} for every document
+     * parses every relevant row in placex and location_property_osmline, creates a corresponding document and calls the {@link #importer}
+     * for every document.
+     * <p/>
+     * Both tables are split into ranges of geometry sectors which are read by {@link #importThreads} threads in parallel, each on its
+     * own database connection. Documents are handed over to the single import thread in batches.
+     * <p/>
+     * With a {@link #checkpoint} the planned ranges are saved and every range is marked done once the importer acknowledged all of
+     * its documents. If the checkpoint already contains a plan, only the ranges not done yet are read.
      */
     public void readEntireDatabase(String... countryCodes) {
-        final int progressInterval = 50000;
-        final long startMillis = System.currentTimeMillis();
-
-        String andCountryCodeStr = "", whereCountryCodeStr = "";
+        String andCountryCodeStr = "";
         String countryCodeStr = convertCountryCode(countryCodes);
         if (!countryCodeStr.isEmpty()) {
             andCountryCodeStr = "AND country_code in (" + countryCodeStr + ")";
-            whereCountryCodeStr = "WHERE country_code in (" + countryCodeStr + ")";
         }
 
-        log.info("start importing documents from nominatim (" + (countryCodeStr.isEmpty() ? "global" : countryCodeStr) + ")");
+        log.info("start importing documents from nominatim (" + (countryCodeStr.isEmpty() ? "global" : countryCodeStr) + ") with " + importThreads + " reader threads");
 
-        final BlockingQueue<PhotonDoc> documents = new LinkedBlockingDeque<>(20);
-        Thread importThread = new Thread(new ImportThread(documents));
-        importThread.start();
-        final AtomicLong counter = new AtomicLong();
-        template.query("SELECT " + selectColsPlaceX +
-                " FROM placex " +
-                " WHERE linked_place_id IS NULL AND centroid IS NOT NULL " + andCountryCodeStr +
-                " ORDER BY geometry_sector; ", new RowCallbackHandler() {
-            @Override
-            public void processRow(ResultSet rs) throws SQLException {
-                // turns a placex row into a photon document that gathers all de-normalised information
+        List<SectorRange> ranges;
+        if (checkpoint != null && checkpoint.hasRanges()) {
+            ranges = checkpoint.getOpenRanges();
+            log.info(String.format("resuming import, %d of %d sector ranges left", ranges.size(), checkpoint.getRangeCount()));
+        } else {
+            // more ranges than threads so that threads finishing sparse sectors early pick up more work,
+            // and small enough that a resumed import repeats little work
+            int parts = Math.max(MIN_SECTOR_RANGES, importThreads * 8);
+            ranges = new ArrayList<>(getSectorRanges(PLACEX, parts));
+            ranges.addAll(getSectorRanges(OSMLINE, parts));
+            if (checkpoint != null) {
+                checkpoint.setRanges(ranges);
+            }
+        }
 
-                NominatimResult docs = placeRowMapper.mapRow(rs, 0);
+        final ImportProgress progress = new ImportProgress(new LinkedBlockingDeque<ImportBatch>(2 * importThreads + 2));
+        Thread importThread = new Thread(new ImportThread(progress.documents));
+        importThread.start();
 
-                if (!docs.isUsefulForIndex()) return; // do not import document
+        String placexQuery = "SELECT " + selectColsPlaceX +
+                " FROM placex " +
+                " WHERE linked_place_id IS NULL AND centroid IS NOT NULL AND (geometry_sector BETWEEN ? AND ? OR (? AND geometry_sector IS NULL)) " + andCountryCodeStr +
+                " ORDER BY geometry_sector; ";
+        String osmlineQuery = "SELECT " + selectColsOsmline +
+                " FROM location_property_osmline " +
+                " WHERE (geometry_sector BETWEEN ? AND ? OR (? AND geometry_sector IS NULL)) " + andCountryCodeStr +
+                " ORDER BY geometry_sector; ";
+        List<RangeReader> readers = new ArrayList<>();
+        for (SectorRange range : ranges) {
+            if (range.table.equals(PLACEX)) {
+                readers.add(new RangeReader(placexQuery, range, placeRowMapper, progress));
+            } else {
+                readers.add(new RangeReader(osmlineQuery, range, osmlineRowMapper, progress));
+            }
+        }
 
-                // finalize document by taking into account the higher level placex rows assigned to this row
-                completePlace(docs.getBaseDoc());
-
-                for (PhotonDoc doc : docs.getDocsWithHousenumber()) {
-                    while (true) {
-                        try {
-                            documents.put(doc);
-                        } catch (InterruptedException e) {
-                            log.warn("Thread interrupted while placing document in queue.");
-                            continue;
-                        }
-                        break;
-                    }
-                    if (counter.incrementAndGet() % progressInterval == 0) {
-                        final double documentsPerSecond = 1000d * counter.longValue() / (System.currentTimeMillis() - startMillis);
-                        log.info(String.format("imported %s documents [%.1f/second]", MessageFormat.format("{0}", counter.longValue()), documentsPerSecond));
-                    }
+        Throwable failure = null;
+        ExecutorService executor = Executors.newFixedThreadPool(importThreads);
+        try {
+            for (Future<Void> result : executor.invokeAll(readers)) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) failure = e.getCause();
                 }
             }
-        });
+        } catch (InterruptedException e) {
+            progress.abort();
+            failure = e;
+        } finally {
+            executor.shutdown();
+        }
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                log.warn("Thread interrupted while waiting for readers to finish.");
+            }
+        }
 
-        template.query("SELECT place_id, osm_id, parent_place_id, startnumber, endnumber, interpolationtype, postcode, country_code, linegeo " +
-                " FROM location_property_osmline " +
-                whereCountryCodeStr +
-                " ORDER BY geometry_sector; ", new RowCallbackHandler() {
-            @Override
-            public void processRow(ResultSet rs) throws SQLException {
-                NominatimResult docs = osmlineRowMapper.mapRow(rs, 0);
+        while (true) {
+            try {
+                progress.documents.put(FINAL_BATCH);
+                importThread.join();
+            } catch (InterruptedException e) {
+                log.warn("Thread interrupted while placing document in queue.");
+                continue;
+            }
+            break;
+        }
+        if (failure != null) {
+            throw new RuntimeException("import from nominatim aborted after " + progress.counter.longValue() + " documents", failure);
+        }
+        if (checkpoint != null) {
+            List<SectorRange> open = checkpoint.getOpenRanges();
+            if (!open.isEmpty()) {
+                throw new RuntimeException(String.format("%d sector ranges were not acknowledged by the importer, continue the import with -resume", open.size()));
+            }
+            checkpoint.delete();
+        }
+        log.info(String.format("finished import of %s photon documents, %s", MessageFormat.format("{0}", progress.counter.longValue()), addressCache));
+    }
 
-                if (!docs.isUsefulForIndex()) return; // do not import document
+    /**
+     * completes the collected rows with their address hierarchy and hands the resulting documents over to the import thread as one batch
+     *
+     * @param window         rows read from the database, cleared afterwards
+     * @param completedRange set for the last window of a range
+     */
+    private void importWindow(List<NominatimResult> window, ImportProgress progress, SectorRange completedRange) {
+        if (window.isEmpty() && completedRange == null) return;
 
+        final int progressInterval = 50000;
+        if (window.size() == 1) {
+            completePlace(window.get(0).getBaseDoc());
+        } else if (!window.isEmpty()) {
+            List<PhotonDoc> baseDocs = new ArrayList<>(window.size());
+            for (NominatimResult docs : window) {
+                baseDocs.add(docs.getBaseDoc());
+            }
+            List<List<AddressRow>> addresses = getAddresses(baseDocs);
+            for (int i = 0; i < baseDocs.size(); i++) {
                 // finalize document by taking into account the higher level placex rows assigned to this row
-                completePlace(docs.getBaseDoc());
-
-                for (PhotonDoc doc : docs.getDocsWithHousenumber()) {
-                    while (true) {
-                        try {
-                            documents.put(doc);
-                        } catch (InterruptedException e) {
-                            log.warn("Thread interrupted while placing document in queue.");
-                            continue;
-                        }
-                        break;
-                    }
-                    if (counter.incrementAndGet() % progressInterval == 0) {
-                        final double documentsPerSecond = 1000d * counter.longValue() / (System.currentTimeMillis() - startMillis);
-                        log.info(String.format("imported %s documents [%.1f/second]", MessageFormat.format("{0}", counter.longValue()), documentsPerSecond));
-                    }
-                }
+                completePlace(baseDocs.get(i), addresses.get(i));
             }
-        });
+        }
+
+        List<PhotonDoc> batch = new ArrayList<>(window.size());
+        for (NominatimResult docs : window) {
+            batch.addAll(docs.getDocsWithHousenumber());
+        }
+        window.clear();
 
         while (true) {
             try {
-                documents.put(FINAL_DOCUMENT);
-                importThread.join();
+                progress.documents.put(new ImportBatch(batch, completedRange));
             } catch (InterruptedException e) {
                 log.warn("Thread interrupted while placing document in queue.");
                 continue;
             }
             break;
         }
-        log.info(String.format("finished import of %s photon documents.", MessageFormat.format("{0}", counter.longValue())));
+
+        long total = progress.counter.addAndGet(batch.size());
+        if ((total - batch.size()) / progressInterval != total / progressInterval) {
+            final double documentsPerSecond = 1000d * total / (System.currentTimeMillis() - progress.startMillis);
+            log.info(String.format("imported %s documents [%.1f/second], %s", MessageFormat.format("{0}", total), documentsPerSecond, addressCache));
+        }
     }
 
     /**
@@ -459,7 +933,16 @@ public class NominatimConnector {
      * @param doc
      */
     private void completePlace(PhotonDoc doc) {
-        final List<AddressRow> addresses = getAddresses(doc);
+        completePlace(doc, getAddresses(doc));
+    }
+
+    /**
+     * completes a photon doc with the given address hierarchy as returned by {@link #getAddresses(PhotonDoc)}
+     *
+     * @param doc
+     * @param addresses
+     */
+    static void completePlace(PhotonDoc doc, List<AddressRow> addresses) {
         for (AddressRow address : addresses) {
 
             if (address.hasPostcode() && doc.getPostcode() == null) {
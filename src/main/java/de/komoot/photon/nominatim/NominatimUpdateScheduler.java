@@ -0,0 +1,147 @@
+package de.komoot.photon.nominatim;
+
+import lombok.extern.slf4j.Slf4j;
+import org.json.JSONObject;
+
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * runs {@link NominatimUpdater#update()} on a single dedicated thread, triggered on request or periodically.
+ * <p/>
+ * In poll mode the periodic run only starts an update when nominatim marked imported changes as not indexed yet, in interval mode
+ * every period starts an update. Requests arriving while an update is queued or running are merged into it.
+ */
+@Slf4j
+public class NominatimUpdateScheduler {
+    public static final String MODE_POLL = "poll";
+    public static final String MODE_INTERVAL = "interval";
+
+    private final NominatimUpdater updater;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "nominatim-update");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    /**
+     * an update is queued but not started yet
+     */
+    private final AtomicBoolean queued = new AtomicBoolean();
+
+    private volatile Date lastStart;
+    private volatile long lastDurationMillis = -1;
+    private volatile int lastPlaces;
+    private volatile String lastError;
+    private volatile long runs;
+    /**
+     * date of the OSM data contained in the index after the last successful update
+     */
+    private volatile Date indexedDataDate;
+
+    public NominatimUpdateScheduler(NominatimUpdater updater) {
+        this.updater = updater;
+    }
+
+    /**
+     * starts periodic updates
+     *
+     * @param intervalSeconds seconds between two checks, the next check is scheduled after the previous update finished
+     * @param mode            {@link #MODE_POLL} or {@link #MODE_INTERVAL}
+     */
+    public void schedule(int intervalSeconds, final String mode) {
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (MODE_INTERVAL.equals(mode) || updater.hasPendingChanges()) {
+                        runUpdate();
+                    }
+                } catch (RuntimeException e) {
+                    // an exception would cancel all further runs
+                    log.error("scheduled nominatim update failed", e);
+                    lastError = String.valueOf(e.getMessage());
+                }
+            }
+        }, 0, intervalSeconds, TimeUnit.SECONDS);
+        log.info(String.format("nominatim updates scheduled every %d seconds in %s mode", intervalSeconds, mode));
+    }
+
+    /**
+     * queues an update unless one is queued already
+     *
+     * @return false if an update was queued already
+     */
+    public boolean trigger() {
+        if (!queued.compareAndSet(false, true)) {
+            return false;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                queued.set(false);
+                try {
+                    runUpdate();
+                } catch (RuntimeException e) {
+                    log.error("nominatim update failed", e);
+                    lastError = String.valueOf(e.getMessage());
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * an update skipped because the change feed or another update held the lock indexed nothing, the status is left as it is
+     */
+    void runUpdate() {
+        Date dataDate = updater.getLastImportDate();
+        long startMillis = System.currentTimeMillis();
+        int places = updater.update();
+        if (places == NominatimUpdater.SKIPPED) {
+            log.info("nominatim update skipped, another update is in progress");
+            return;
+        }
+        lastStart = new Date(startMillis);
+        lastError = null;
+        lastPlaces = places;
+        lastDurationMillis = System.currentTimeMillis() - startMillis;
+        indexedDataDate = dataDate;
+        runs++;
+    }
+
+    /**
+     * @return state of the updates as reported by the status endpoint
+     */
+    public JSONObject getStatus() {
+        JSONObject status = new JSONObject()
+                .put("running", updater.isUpdating())
+                .put("queued", queued.get())
+                .put("runs", runs);
+        if (lastStart != null) {
+            status.put("last_start", lastStart.getTime() / 1000);
+        }
+        if (lastDurationMillis >= 0) {
+            status.put("last_duration_ms", lastDurationMillis);
+            status.put("last_places", lastPlaces);
+        }
+        if (lastError != null) {
+            status.put("last_error", lastError);
+        }
+        if (indexedDataDate != null) {
+            status.put("data_date", indexedDataDate.getTime() / 1000);
+            status.put("lag_seconds", (System.currentTimeMillis() - indexedDataDate.getTime()) / 1000);
+        }
+        return status;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -1,17 +1,21 @@
 package de.komoot.photon.nominatim;
 
+import com.google.common.collect.Iterables;
 import de.komoot.photon.PhotonDoc;
 import de.komoot.photon.Updater;
 import de.komoot.photon.nominatim.model.UpdateRow;
 import org.apache.commons.dbcp.BasicDataSource;
 import org.postgis.jts.JtsWrapper;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.List;
-import java.util.Map;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -27,13 +31,39 @@ public class NominatimUpdater {
     private static final int UPDATE = 2;
     private static final int DELETE = 100;
 
+    /**
+     * table filled by the change feed triggers
+     */
+    public static final String CHANGE_QUEUE = "photon_update_queue";
+    /**
+     * channel notified when places are queued
+     */
+    public static final String CHANGE_CHANNEL = "photon_update";
+
+    /**
+     * returned by {@link #update()} if it did not run because another update held the lock
+     */
+    public static final int SKIPPED = -1;
+
     private static final int MIN_RANK = 1;
+    /**
+     * places of lower ranks are not used in addresses
+     */
+    private static final int MIN_ADDRESS_RANK = 5;
+    private static final int RENAME_BATCH_SIZE = 1000;
     private static final int MAX_RANK = 30;
 
+    private final BasicDataSource    dataSource;
     private final JdbcTemplate       template;
     private final NominatimConnector exporter;
 
     private Updater updater;
+    private int updateThreads = 1;
+    /**
+     * places whose names changed during the current update, their dependents are updated at the end
+     */
+    private final Set<Long> renamedPlaces = ConcurrentHashMap.newKeySet();
+    private final List<Runnable> updateListeners = new CopyOnWriteArrayList<>();
 
     /**
      * when updating lockout other threads
@@ -44,103 +74,465 @@ public class NominatimUpdater {
         this.updater = updater;
     }
 
-    public void update() {
+    /**
+     * @param listener called after every update that changed the index, once the changes are visible to searches
+     */
+    public void addUpdateListener(Runnable listener) {
+        updateListeners.add(listener);
+    }
+
+    private void notifyUpdateListeners() {
+        for (Runnable listener : updateListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * @param addressCache cache for address rows, places are evicted from it as soon as they are updated
+     */
+    public void setAddressCache(AddressCache addressCache) {
+        exporter.setAddressCache(addressCache);
+    }
+
+    /**
+     * @param updateThreads number of geometry sectors of the same rank that are updated in parallel
+     */
+    public void setUpdateThreads(int updateThreads) {
+        this.updateThreads = Math.max(1, updateThreads);
+        // every worker uses one connection at a time
+        exporter.setMaxConnections(this.updateThreads + 1);
+        dataSource.setMaxActive(Math.max(8, this.updateThreads + 1));
+    }
+
+    /**
+     * updates all places nominatim marked as changed.
+     * <p/>
+     * Ranks are processed strictly in order, as places of higher ranks take their address from lower ranks. Within a rank the geometry
+     * sectors are independent and processed by {@link #updateThreads} workers in parallel.
+     *
+     * @return number of places and interpolations processed, {@link #SKIPPED} if another update is in progress
+     */
+    public int update() {
         if (updateLock.tryLock()) {
             try {
-                int updatedPlaces = 0;
-                int deletedPlaces = 0;
-                for (int rank = MIN_RANK; rank <= MAX_RANK; rank++) {
-                    LOGGER.info(String.format("Starting rank %d", rank));
-                    for (Map<String, Object> sector : getIndexSectors(rank)) {
-                        for (UpdateRow place : getIndexSectorPlaces(rank, (Integer) sector.get("geometry_sector"))) {
-                            long placeId = place.getPlaceId();
-                            template.update("update placex set indexed_status = 0 where place_id = ?;", placeId);
-
-                            Integer indexedStatus = place.getIndexdStatus();
-                            if (indexedStatus == DELETE || (indexedStatus == UPDATE && rank == MAX_RANK)) {
-                                updater.delete(placeId);
-                                if (indexedStatus == DELETE) {
-                                    deletedPlaces++;
-                                    continue;
-                                }
-                                indexedStatus = CREATE; // always create
-                            }
-                            updatedPlaces++;
-
-                            final List<PhotonDoc> updatedDocs = exporter.getByPlaceId(place.getPlaceId());
-                            boolean wasUseful = false;
-                            for (PhotonDoc updatedDoc : updatedDocs) {
-                                switch (indexedStatus) {
-                                case CREATE:
-                                    if (updatedDoc.isUsefulForIndex()) {
-                                        updater.create(updatedDoc);
-                                    }
-                                    break;
-                                case UPDATE:
-                                    if (updatedDoc.isUsefulForIndex()) {
-                                        updater.updateOrCreate(updatedDoc);
-                                        wasUseful = true;
-                                    }
-                                    break;
-                                default:
-                                    LOGGER.error(String.format("Unknown index status %d", indexedStatus));
-                                    break;
+                final long startMillis = System.currentTimeMillis();
+                ExecutorService executor = Executors.newFixedThreadPool(updateThreads);
+                int processed = 0;
+                try {
+                    final AtomicInteger updatedPlaces = new AtomicInteger();
+                    final AtomicInteger deletedPlaces = new AtomicInteger();
+                    for (int rank = MIN_RANK; rank <= MAX_RANK; rank++) {
+                        LOGGER.info(String.format("Starting rank %d", rank));
+                        final long rankMillis = System.currentTimeMillis();
+                        final int sectorRank = rank;
+                        List<Callable<Integer>> sectors = new ArrayList<>();
+                        for (Map<String, Object> sector : getIndexSectors(rank)) {
+                            final Integer geometrySector = (Integer) sector.get("geometry_sector");
+                            sectors.add(new Callable<Integer>() {
+                                @Override
+                                public Integer call() {
+                                    return updateSector(sectorRank, geometrySector, updatedPlaces, deletedPlaces);
                                 }
-                            }
-                            if (indexedStatus == UPDATE && !wasUseful) {
-                                // only true when rank != 30
-                                // if no documents for the place id exist this will likely cause moaning
-                                updater.delete(placeId);
-                                updatedPlaces--;
-                            }
+                            });
                         }
+                        int rankPlaces = runAll(executor, sectors);
+                        processed += rankPlaces;
+                        logThroughput("rank " + rank, rankPlaces, sectors.size(), rankMillis);
                     }
-                }
 
-                LOGGER.info(String.format("%d places created or updated, %d deleted", updatedPlaces, deletedPlaces));
-
-                // update documents generated from address interpolations
-                // .isUsefulForIndex() should always return true for documents
-                // created from interpolations so no need to check them
-                LOGGER.info("Starting interpolations");
-                int updatedInterpolations = 0;
-                int deletedInterpolations = 0;
-                int interpolationDocuments = 0;
-                for (Map<String, Object> sector : template.queryForList(
-                        "select geometry_sector,count(*) from location_property_osmline where indexed_status > 0 group by geometry_sector order by geometry_sector;")) {
-                    for (UpdateRow place : getIndexSectorInterpolations((Integer) sector.get("geometry_sector"))) {
-                        long placeId = place.getPlaceId();
-                        template.update("update location_property_osmline set indexed_status = 0 where place_id = ?;", placeId);
-
-                        Integer indexedStatus = place.getIndexdStatus();
-                        if (indexedStatus != CREATE) {
-                            updater.delete(placeId);
-                            if (indexedStatus == DELETE) {
-                                deletedInterpolations++;
-                                continue;
-                            }
-                        }
-                        updatedInterpolations++;
+                    LOGGER.info(String.format("%d places created or updated, %d deleted", updatedPlaces.get(), deletedPlaces.get()));
 
-                        final List<PhotonDoc> updatedDocs = exporter.getInterpolationsByPlaceId(place.getPlaceId());
-                        for (PhotonDoc updatedDoc : updatedDocs) {
-                            updater.create(updatedDoc);
-                            interpolationDocuments++;
-                        }
+                    // update documents generated from address interpolations
+                    // .isUsefulForIndex() should always return true for documents
+                    // created from interpolations so no need to check them
+                    LOGGER.info("Starting interpolations");
+                    final long interpolationMillis = System.currentTimeMillis();
+                    final AtomicInteger updatedInterpolations = new AtomicInteger();
+                    final AtomicInteger deletedInterpolations = new AtomicInteger();
+                    final AtomicInteger interpolationDocuments = new AtomicInteger();
+                    List<Callable<Integer>> sectors = new ArrayList<>();
+                    for (Map<String, Object> sector : template.queryForList(
+                            "select geometry_sector,count(*) from location_property_osmline where indexed_status > 0 group by geometry_sector order by geometry_sector;")) {
+                        final Integer geometrySector = (Integer) sector.get("geometry_sector");
+                        sectors.add(new Callable<Integer>() {
+                            @Override
+                            public Integer call() {
+                                return updateInterpolationSector(geometrySector, updatedInterpolations, deletedInterpolations, interpolationDocuments);
+                            }
+                        });
                     }
+                    int interpolations = runAll(executor, sectors);
+                    processed += interpolations;
+                    logThroughput("interpolations", interpolations, sectors.size(), interpolationMillis);
+                    LOGGER.info(String.format("%d interpolations created or updated, %d deleted, %d documents added or updated", updatedInterpolations.get(),
+                            deletedInterpolations.get(), interpolationDocuments.get()));
+                } finally {
+                    executor.shutdownNow();
                 }
-                LOGGER.info(String.format("%d interpolations created or updated, %d deleted, %d documents added or updated", updatedInterpolations,
-                        deletedInterpolations, interpolationDocuments));
+                propagateRenames();
                 updater.finish();
                 template.update("update import_status set indexed=true;"); // indicate that we are finished
+                if (processed > 0) {
+                    notifyUpdateListeners();
+                }
 
-                LOGGER.info("Finished updating");
+                LOGGER.info(String.format("Finished updating in %d seconds, %s", (System.currentTimeMillis() - startMillis) / 1000, exporter.getAddressCache()));
+                return processed;
             } finally {
                 updateLock.unlock();
             }
         } else {
             LOGGER.info("Update already in progress");
+            return SKIPPED;
+        }
+    }
+
+    /**
+     * @return true while {@link #update()} is running
+     */
+    public boolean isUpdating() {
+        return updateLock.isLocked();
+    }
+
+    /**
+     * @return true if nominatim imported changes that were not indexed yet
+     */
+    public boolean hasPendingChanges() {
+        Boolean indexed = template.queryForObject("select indexed from import_status limit 1", Boolean.class);
+        return !Boolean.TRUE.equals(indexed);
+    }
+
+    /**
+     * @return date of the OSM data nominatim is updated to
+     */
+    public Date getLastImportDate() {
+        return template.queryForObject("select lastimportdate from import_status limit 1", Timestamp.class);
+    }
+
+    /**
+     * runs the sector updates on the executor and waits for all of them
+     *
+     * @return number of places updated
+     */
+    private int runAll(ExecutorService executor, List<Callable<Integer>> sectors) {
+        int places = 0;
+        try {
+            for (Future<Integer> result : executor.invokeAll(sectors)) {
+                places += result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("update interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("update failed", e.getCause());
+        }
+        return places;
+    }
+
+    private void logThroughput(String step, int places, int sectors, long startMillis) {
+        if (places == 0) return;
+
+        long millis = Math.max(1, System.currentTimeMillis() - startMillis);
+        LOGGER.info(String.format("%s: %d places in %d sectors [%.1f places/second]", step, places, sectors, 1000d * places / millis));
+    }
+
+    /**
+     * updates all changed places of one rank in one geometry sector
+     *
+     * @return number of places processed
+     */
+    private int updateSector(int rank, Integer geometrySector, AtomicInteger updatedPlaces, AtomicInteger deletedPlaces) {
+        List<UpdateRow> places = getIndexSectorPlaces(rank, geometrySector);
+        updatePlaces(rank, places, updatedPlaces, deletedPlaces);
+        return places.size();
+    }
+
+    /**
+     * writes the changed places of one rank to the index and marks them as indexed. Renamed places are detected with one lookup of the
+     * indexed names for all places before their new versions are sent.
+     */
+    private void updatePlaces(int rank, List<UpdateRow> places, AtomicInteger updatedPlaces, AtomicInteger deletedPlaces) {
+        resetIndexedStatus("placex", places);
+
+        List<List<PhotonDoc>> placeDocs = new ArrayList<>(places.size());
+        List<PhotonDoc> renameCandidates = new ArrayList<>();
+        for (UpdateRow place : places) {
+            // the place may be part of the address of places in higher ranks
+            exporter.getAddressCache().invalidate(place.getPlaceId());
+
+            Integer indexedStatus = place.getIndexdStatus();
+            if (indexedStatus == DELETE) {
+                placeDocs.add(Collections.<PhotonDoc>emptyList());
+                continue;
+            }
+            List<PhotonDoc> docs = exporter.getByPlaceId(place.getPlaceId());
+            placeDocs.add(docs);
+            if (indexedStatus == UPDATE && rank >= MIN_ADDRESS_RANK && rank < MAX_RANK) {
+                for (PhotonDoc doc : docs) {
+                    if (doc.isUsefulForIndex()) {
+                        // documents with house numbers share the names of the first one
+                        renameCandidates.add(doc);
+                        break;
+                    }
+                }
+            }
+        }
+        renamedPlaces.addAll(updater.getRenamedPlaceIds(renameCandidates));
+
+        for (int i = 0; i < places.size(); i++) {
+            long placeId = places.get(i).getPlaceId();
+
+            Integer indexedStatus = places.get(i).getIndexdStatus();
+            if (indexedStatus == DELETE || (indexedStatus == UPDATE && rank == MAX_RANK)) {
+                updater.delete(placeId);
+                if (indexedStatus == DELETE) {
+                    deletedPlaces.incrementAndGet();
+                    continue;
+                }
+                indexedStatus = CREATE; // always create
+            }
+            updatedPlaces.incrementAndGet();
+
+            boolean wasUseful = false;
+            for (PhotonDoc updatedDoc : placeDocs.get(i)) {
+                switch (indexedStatus) {
+                case CREATE:
+                    if (updatedDoc.isUsefulForIndex()) {
+                        updater.create(updatedDoc);
+                    }
+                    break;
+                case UPDATE:
+                    if (updatedDoc.isUsefulForIndex()) {
+                        updater.updateOrCreate(updatedDoc);
+                        wasUseful = true;
+                    }
+                    break;
+                default:
+                    LOGGER.error(String.format("Unknown index status %d", indexedStatus));
+                    break;
+                }
+            }
+            if (indexedStatus == UPDATE && !wasUseful) {
+                // only true when rank != 30
+                // if no documents for the place id exist this will likely cause moaning
+                updater.delete(placeId);
+                updatedPlaces.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * updates all changed address interpolations in one geometry sector
+     *
+     * @return number of interpolations processed
+     */
+    private int updateInterpolationSector(Integer geometrySector, AtomicInteger updatedInterpolations, AtomicInteger deletedInterpolations,
+                                          AtomicInteger interpolationDocuments) {
+        List<UpdateRow> places = getIndexSectorInterpolations(geometrySector);
+        updateInterpolations(places, updatedInterpolations, deletedInterpolations, interpolationDocuments);
+        return places.size();
+    }
+
+    /**
+     * writes the changed interpolations to the index and marks them as indexed
+     */
+    private void updateInterpolations(List<UpdateRow> places, AtomicInteger updatedInterpolations, AtomicInteger deletedInterpolations,
+                                      AtomicInteger interpolationDocuments) {
+        resetIndexedStatus("location_property_osmline", places);
+
+        for (UpdateRow place : places) {
+            long placeId = place.getPlaceId();
+
+            Integer indexedStatus = place.getIndexdStatus();
+            if (indexedStatus != CREATE) {
+                updater.delete(placeId);
+                if (indexedStatus == DELETE) {
+                    deletedInterpolations.incrementAndGet();
+                    continue;
+                }
+            }
+            updatedInterpolations.incrementAndGet();
+
+            final List<PhotonDoc> updatedDocs = exporter.getInterpolationsByPlaceId(place.getPlaceId());
+            for (PhotonDoc updatedDoc : updatedDocs) {
+                updater.create(updatedDoc);
+                interpolationDocuments.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * creates the queue table and the triggers feeding it. Nominatim's tables get a trigger that queues every place marked for indexing
+     * and notifies {@link #CHANGE_CHANNEL}, so changes can be consumed by {@link #updateFromQueue(int)} without scanning the tables.
+     * Safe to call repeatedly.
+     */
+    public void installChangeFeed() {
+        template.execute("create table if not exists " + CHANGE_QUEUE + " (id bigserial primary key, place_id bigint not null, source text not null);");
+        template.execute("create or replace function photon_queue_change() returns trigger as $$\n"
+                + "begin\n"
+                + "  insert into " + CHANGE_QUEUE + " (place_id, source) values (NEW.place_id, TG_TABLE_NAME);\n"
+                + "  perform pg_notify('" + CHANGE_CHANNEL + "', '');\n"
+                + "  return NEW;\n"
+                + "end;\n"
+                + "$$ language plpgsql;");
+        for (String table : new String[] { "placex", "location_property_osmline" }) {
+            template.execute("drop trigger if exists photon_queue_change on " + table + ";");
+            template.execute("create trigger photon_queue_change after insert or update of indexed_status on " + table
+                    + " for each row when (NEW.indexed_status > 0) execute procedure photon_queue_change();");
+        }
+        LOGGER.info("installed change feed into table " + CHANGE_QUEUE);
+    }
+
+    /**
+     * updates all places queued by the change feed so far. Like {@link #update()}, the places of all queue entries are written rank by
+     * rank, so that a place queued before its parent reads its address only after the parent was written. Queue entries are removed only
+     * after their places were written, places indexed by {@link #update()} in the meantime are skipped.
+     *
+     * @param batchSize number of places of one rank written at once
+     * @return number of queue entries processed
+     */
+    public int updateFromQueue(int batchSize) {
+        updateLock.lock();
+        try {
+            // entries queued from now on are left for the next run
+            Long lastId = template.queryForObject("select max(id) from " + CHANGE_QUEUE + ";", Long.class);
+            if (lastId == null) {
+                return 0;
+            }
+            int entries = template.queryForObject("select count(*) from " + CHANGE_QUEUE + " where id <= ?;", Integer.class, lastId);
+            Set<Long> placeIds = new HashSet<>(template.queryForList("select distinct place_id from " + CHANGE_QUEUE
+                    + " where id <= ? and source is distinct from 'location_property_osmline';", Long.class, lastId));
+            Set<Long> interpolationIds = new HashSet<>(template.queryForList("select distinct place_id from " + CHANGE_QUEUE
+                    + " where id <= ? and source = 'location_property_osmline';", Long.class, lastId));
+
+            AtomicInteger updatedPlaces = new AtomicInteger();
+            AtomicInteger deletedPlaces = new AtomicInteger();
+            // parents first across the whole queue, as for the full update
+            for (Map.Entry<Integer, List<UpdateRow>> rank : getQueuedPlaces(placeIds).entrySet()) {
+                for (List<UpdateRow> batch : Iterables.partition(rank.getValue(), batchSize)) {
+                    updatePlaces(rank.getKey(), batch, updatedPlaces, deletedPlaces);
+                }
+            }
+            AtomicInteger interpolationDocuments = new AtomicInteger();
+            for (List<UpdateRow> batch : Iterables.partition(getQueuedInterpolations(interpolationIds), batchSize)) {
+                updateInterpolations(batch, new AtomicInteger(), new AtomicInteger(), interpolationDocuments);
+            }
+            // places removed from nominatim while queued
+            for (Long placeId : placeIds) {
+                updater.delete(placeId);
+            }
+            for (Long placeId : interpolationIds) {
+                updater.delete(placeId);
+            }
+            propagateRenames();
+            updater.finish();
+
+            template.update("delete from " + CHANGE_QUEUE + " where id <= ?;", lastId);
+            notifyUpdateListeners();
+            LOGGER.info(String.format("change feed: %d queue entries, %d places created or updated, %d deleted, %d interpolation documents",
+                    entries, updatedPlaces.get(), deletedPlaces.get() + placeIds.size() + interpolationIds.size(), interpolationDocuments.get()));
+            return entries;
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    /**
+     * looks up the queued places by rank, ids found are removed from the set. Places not marked for indexing any more are skipped.
+     */
+    private SortedMap<Integer, List<UpdateRow>> getQueuedPlaces(final Set<Long> placeIds) {
+        final SortedMap<Integer, List<UpdateRow>> ranks = new TreeMap<>();
+        if (placeIds.isEmpty()) return ranks;
+
+        template.query("select place_id, indexed_status, rank_search from placex where place_id = ANY(?);",
+                new NominatimConnector.PlaceIdArraySetter(placeIds), new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        placeIds.remove(rs.getLong("place_id"));
+                        if (rs.getInt("indexed_status") == 0) return;
+
+                        UpdateRow updateRow = new UpdateRow();
+                        updateRow.setPlaceId(rs.getLong("place_id"));
+                        updateRow.setIndexdStatus(rs.getInt("indexed_status"));
+                        int rank = Math.max(MIN_RANK, Math.min(MAX_RANK, rs.getInt("rank_search")));
+                        if (!ranks.containsKey(rank)) {
+                            ranks.put(rank, new ArrayList<UpdateRow>());
+                        }
+                        ranks.get(rank).add(updateRow);
+                    }
+                });
+        return ranks;
+    }
+
+    /**
+     * looks up the queued interpolations, ids found are removed from the set. Interpolations not marked for indexing any more are skipped.
+     */
+    private List<UpdateRow> getQueuedInterpolations(final Set<Long> placeIds) {
+        final List<UpdateRow> rows = new ArrayList<>();
+        if (placeIds.isEmpty()) return rows;
+
+        template.query("select place_id, indexed_status from location_property_osmline where place_id = ANY(?);",
+                new NominatimConnector.PlaceIdArraySetter(placeIds), new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        placeIds.remove(rs.getLong("place_id"));
+                        if (rs.getInt("indexed_status") == 0) return;
+
+                        UpdateRow updateRow = new UpdateRow();
+                        updateRow.setPlaceId(rs.getLong("place_id"));
+                        updateRow.setIndexdStatus(rs.getInt("indexed_status"));
+                        rows.add(updateRow);
+                    }
+                });
+        return rows;
+    }
+
+    /**
+     * updates the address fields of all documents having a renamed place in their address. Only the address fields are sent, the
+     * dependent places are read in batches with their complete address.
+     */
+    private void propagateRenames() {
+        if (renamedPlaces.isEmpty()) return;
+
+        final long startMillis = System.currentTimeMillis();
+        Set<Long> placeIds = new HashSet<>();
+        Set<Long> interpolationIds = new HashSet<>();
+        for (Long renamed : renamedPlaces) {
+            placeIds.addAll(exporter.getDependentPlaceIds(renamed));
+            interpolationIds.addAll(exporter.getDependentInterpolationIds(renamed));
+        }
+
+        int documents = 0;
+        for (List<Long> batch : Iterables.partition(placeIds, RENAME_BATCH_SIZE)) {
+            for (PhotonDoc doc : exporter.getByPlaceIds(batch)) {
+                if (doc.isUsefulForIndex()) {
+                    updater.updateAddress(doc);
+                    documents++;
+                }
+            }
+        }
+        for (List<Long> batch : Iterables.partition(interpolationIds, RENAME_BATCH_SIZE)) {
+            for (PhotonDoc doc : exporter.getInterpolationsByPlaceIds(batch)) {
+                updater.updateAddress(doc);
+                documents++;
+            }
+        }
+        LOGGER.info(String.format("%d renamed places, updated the address of %d documents in %d seconds", renamedPlaces.size(), documents,
+                (System.currentTimeMillis() - startMillis) / 1000));
+        renamedPlaces.clear();
+    }
+
+    /**
+     * marks the given places as indexed with a single statement
+     */
+    private void resetIndexedStatus(String table, List<UpdateRow> places) {
+        if (places.isEmpty()) return;
+
+        List<Long> placeIds = new ArrayList<>(places.size());
+        for (UpdateRow place : places) {
+            placeIds.add(place.getPlaceId());
         }
+        template.update("update " + table + " set indexed_status = 0 where place_id = ANY(?);", new NominatimConnector.PlaceIdArraySetter(placeIds));
     }
 
     private List<Map<String, Object>> getIndexSectors(Integer rank) {
@@ -184,7 +576,7 @@ public class NominatimUpdater {
      * @param password Nominatim database password
      */
     public NominatimUpdater(String host, int port, String database, String username, String password) {
-        BasicDataSource dataSource = new BasicDataSource();
+        dataSource = new BasicDataSource();
 
         dataSource.setUrl(String.format("jdbc:postgresql://%s:%d/%s", host, port, database));
         dataSource.setUsername(username);
@@ -4,6 +4,7 @@ package de.komoot.photon.query;
 import com.google.common.collect.ImmutableSet;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Point;
+import org.elasticsearch.common.geo.GeoPoint;
 import org.elasticsearch.common.lucene.search.function.CombineFunction;
 import org.elasticsearch.common.lucene.search.function.FiltersFunctionScoreQuery.ScoreMode;
 import org.elasticsearch.common.unit.Fuzziness;
@@ -60,8 +61,16 @@ public class PhotonQueryBuilder implements TagFilterQueryBuilder {
 
     protected QueryBuilder m_query4QueryBuilder;
 
+    private final ScoringMode scoringMode;
 
-    private PhotonQueryBuilder(String query, String language) {
+    /**
+     * distance at which the location bias has half of its effect
+     */
+    private static final String BIAS_HALF_DISTANCE = "10km";
+
+
+    private PhotonQueryBuilder(String query, String language, ScoringMode scoringMode) {
+        this.scoringMode = scoringMode;
         defaultMatchQueryBuilder =
                 QueryBuilders.matchQuery("collector.default", query).fuzziness(Fuzziness.ZERO).prefixLength(2).analyzer("search_ngram").minimumShouldMatch("100%");
 
@@ -78,15 +87,23 @@ public class PhotonQueryBuilder implements TagFilterQueryBuilder {
                         .analyzer("search_raw"));
         // @formatter:on
 
-        // this is former general-score, now inline
-        String strCode = "double score = 1 + doc['importance'].value * 100; score";
-        ScriptScoreFunctionBuilder functionBuilder4QueryBuilder =
-                ScoreFunctionBuilders.scriptFunction(new Script(ScriptType.INLINE, "painless", strCode, new HashMap<String, Object>()));
-
-        m_alFilterFunction4QueryBuilder.add(new FilterFunctionBuilder(functionBuilder4QueryBuilder));
-
-        m_finalQueryWithoutTagFilterBuilder = new FunctionScoreQueryBuilder(m_query4QueryBuilder, m_alFilterFunction4QueryBuilder.toArray(new FilterFunctionBuilder[0]))
-                .boostMode(CombineFunction.MULTIPLY).scoreMode(ScoreMode.MULTIPLY);
+        if (scoringMode == ScoringMode.NATIVE) {
+            // 1 + importance * 100 as the sum of a constant and the scaled importance
+            m_finalQueryWithoutTagFilterBuilder = new FunctionScoreQueryBuilder(m_query4QueryBuilder, new FilterFunctionBuilder[] {
+                    new FilterFunctionBuilder(ScoreFunctionBuilders.weightFactorFunction(1)),
+                    new FilterFunctionBuilder(ScoreFunctionBuilders.fieldValueFactorFunction("importance").factor(100).missing(0)) })
+                    .boostMode(CombineFunction.MULTIPLY).scoreMode(ScoreMode.SUM);
+        } else {
+            // this is former general-score, now inline
+            String strCode = "double score = 1 + doc['importance'].value * 100; score";
+            ScriptScoreFunctionBuilder functionBuilder4QueryBuilder =
+                    ScoreFunctionBuilders.scriptFunction(new Script(ScriptType.INLINE, "painless", strCode, new HashMap<String, Object>()));
+
+            m_alFilterFunction4QueryBuilder.add(new FilterFunctionBuilder(functionBuilder4QueryBuilder));
+
+            m_finalQueryWithoutTagFilterBuilder = new FunctionScoreQueryBuilder(m_query4QueryBuilder, m_alFilterFunction4QueryBuilder.toArray(new FilterFunctionBuilder[0]))
+                    .boostMode(CombineFunction.MULTIPLY).scoreMode(ScoreMode.MULTIPLY);
+        }
 
         // @formatter:off
         m_queryBuilderForTopLevelFilter = QueryBuilders.boolQuery()
@@ -107,7 +124,15 @@ public class PhotonQueryBuilder implements TagFilterQueryBuilder {
      * @return An initialized {@link TagFilterQueryBuilder photon query builder}.
      */
     public static TagFilterQueryBuilder builder(String query, String language) {
-        return new PhotonQueryBuilder(query, language);
+        return new PhotonQueryBuilder(query, language, ScoringMode.SCRIPT);
+    }
+
+    /**
+     * @param scoringMode how matching documents are scored
+     * @see #builder(String, String)
+     */
+    public static TagFilterQueryBuilder builder(String query, String language, ScoringMode scoringMode) {
+        return new PhotonQueryBuilder(query, language, scoringMode);
     }
 
 
@@ -121,6 +146,9 @@ public class PhotonQueryBuilder implements TagFilterQueryBuilder {
     @Override
     public TagFilterQueryBuilder withLocationBias(Point point, double scale) {
         if (point == null) return this;
+        if (scoringMode == ScoringMode.NATIVE) {
+            return withNativeLocationBias(point, Math.abs(scale));
+        }
         Map<String, Object> params = newHashMap();
         params.put("lon", point.getX());
         params.put("lat", point.getY());
@@ -136,6 +164,24 @@ public class PhotonQueryBuilder implements TagFilterQueryBuilder {
                         .boostMode(CombineFunction.MULTIPLY);
         return this;
     }
+
+    /**
+     * multiplies the importance score with 0.1 + scale * decay. The exponential decay is 0.5 at {@link #BIAS_HALF_DISTANCE}, like the
+     * script's 1 / (1 + dist / 10km), so both agree up to about 10km. Further away it falls off much faster: beyond about 100km the
+     * bias is gone and places are ranked by importance alone, where the script still prefers the nearer of two distant places. The
+     * decay uses the arc distance, the script the plane distance, which differ negligibly at these distances.
+     */
+    private TagFilterQueryBuilder withNativeLocationBias(Point point, double scale) {
+        List<FilterFunctionBuilder> functions = new ArrayList<>(2);
+        functions.add(new FilterFunctionBuilder(ScoreFunctionBuilders.weightFactorFunction(0.1f)));
+        if (scale > 0) {
+            functions.add(new FilterFunctionBuilder(ScoreFunctionBuilders.exponentialDecayFunction("coordinate", new GeoPoint(point.getY(), point.getX()),
+                    BIAS_HALF_DISTANCE, "0km", 0.5).setWeight((float) scale)));
+        }
+        m_finalQueryWithoutTagFilterBuilder = new FunctionScoreQueryBuilder(m_finalQueryWithoutTagFilterBuilder, functions.toArray(new FilterFunctionBuilder[0]))
+                .boostMode(CombineFunction.MULTIPLY).scoreMode(ScoreMode.SUM);
+        return this;
+    }
     
      @Override
     public TagFilterQueryBuilder withBoundingBox(Envelope bbox) {
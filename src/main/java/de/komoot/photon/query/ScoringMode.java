@@ -0,0 +1,39 @@
+package de.komoot.photon.query;
+
+/**
+ * how {@link PhotonQueryBuilder} scores matching documents by importance and distance to the location bias
+ */
+public enum ScoringMode {
+    /**
+     * inline painless scripts
+     */
+    SCRIPT("script"),
+    /**
+     * built-in function score functions, a field value factor for the importance and an exponential decay for the location bias. The
+     * decay agrees with the script up to about 10km from the bias, distant places are ranked by importance alone. It is not faster
+     * than the scripts, see LocationBiasBenchmark.
+     */
+    NATIVE("native");
+
+    private final String name;
+
+    ScoringMode(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the mode with the given command line name or null
+     */
+    public static ScoringMode forName(String name) {
+        for (ScoringMode mode : values()) {
+            if (mode.name.equals(name)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
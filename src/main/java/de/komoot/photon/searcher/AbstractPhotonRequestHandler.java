@@ -1,12 +1,18 @@
 package de.komoot.photon.searcher;
 
 import de.komoot.photon.query.PhotonRequest;
+import de.komoot.photon.query.ScoringMode;
 import de.komoot.photon.query.TagFilterQueryBuilder;
 import de.komoot.photon.utils.ConvertToJson;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.SearchHit;
 import org.json.JSONObject;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * Created by Sachin Dole on 2/20/2015.
@@ -14,28 +20,84 @@ import java.util.List;
 public abstract class AbstractPhotonRequestHandler<R extends PhotonRequest> implements PhotonRequestHandler<R> {
 
     private final ElasticsearchSearcher elasticsearchSearcher;
+    protected final ScoringMode scoringMode;
 
     public AbstractPhotonRequestHandler(ElasticsearchSearcher elasticsearchSearcher) {
+        this(elasticsearchSearcher, ScoringMode.SCRIPT);
+    }
+
+    public AbstractPhotonRequestHandler(ElasticsearchSearcher elasticsearchSearcher, ScoringMode scoringMode) {
         this.elasticsearchSearcher = elasticsearchSearcher;
+        this.scoringMode = scoringMode;
+    }
+
+    @Override
+    public List<JSONObject> handle(final R photonRequest) {
+        return convert(photonRequest, search(photonRequest));
     }
 
     @Override
-    public List<JSONObject> handle(R photonRequest) {
-        TagFilterQueryBuilder queryBuilder = buildQuery(photonRequest);
-        // for the case of deduplication we need a bit more results, #300
+    public CompletableFuture<List<JSONObject>> handleAsync(final R photonRequest) {
+        return searchAsync(photonRequest).thenApply(results -> convert(photonRequest, results));
+    }
+
+    @Override
+    public List<SearchHit> handleHits(R photonRequest) {
+        return selectHits(photonRequest, search(photonRequest));
+    }
+
+    @Override
+    public CompletableFuture<List<SearchHit>> handleHitsAsync(final R photonRequest) {
+        return searchAsync(photonRequest).thenApply(results -> selectHits(photonRequest, results));
+    }
+
+    private SearchResponse search(R photonRequest) {
+        return elasticsearchSearcher.search(buildQuery(photonRequest).buildQuery(), lenientQuery(photonRequest),
+                getExtendedLimit(photonRequest), ConvertToJson.getSourceFields(photonRequest.getLanguage()));
+    }
+
+    private CompletableFuture<SearchResponse> searchAsync(R photonRequest) {
+        return elasticsearchSearcher.searchAsync(buildQuery(photonRequest).buildQuery(), lenientQuery(photonRequest),
+                getExtendedLimit(photonRequest), ConvertToJson.getSourceFields(photonRequest.getLanguage()));
+    }
+
+    /**
+     * for the case of deduplication we need a bit more results, #300
+     */
+    int getExtendedLimit(R photonRequest) {
         int limit = photonRequest.getLimit();
-        int extLimit = limit > 1 ? (int) Math.round(photonRequest.getLimit() * 1.5) : 1;
-        SearchResponse results = elasticsearchSearcher.search(queryBuilder.buildQuery(), extLimit);
-        if (results.getHits().getTotalHits() == 0) {
-            results = elasticsearchSearcher.search(queryBuilder.withLenientMatch().buildQuery(), extLimit);
-        }
-        List<JSONObject> resultJsonObjects = new ConvertToJson(photonRequest.getLanguage()).convert(results);
-        StreetDupesRemover streetDupesRemover = new StreetDupesRemover(photonRequest.getLanguage());
-        resultJsonObjects = streetDupesRemover.execute(resultJsonObjects);
-        if (resultJsonObjects.size() > limit) {
-            resultJsonObjects = resultJsonObjects.subList(0, limit);
+        return limit > 1 ? (int) Math.round(limit * 1.5) : 1;
+    }
+
+    /**
+     * the lenient query is built from a builder of its own, withLenientMatch() changes the parts shared with the strict query
+     */
+    Supplier<QueryBuilder> lenientQuery(final R photonRequest) {
+        return new Supplier<QueryBuilder>() {
+            @Override
+            public QueryBuilder get() {
+                return buildQuery(photonRequest).withLenientMatch().buildQuery();
+            }
+        };
+    }
+
+    /**
+     * deduplicates the hits of a search for the request
+     */
+    List<SearchHit> selectHits(R photonRequest, SearchResponse results) {
+        int limit = photonRequest.getLimit();
+        List<SearchHit> hits = new StreetDupesRemover(photonRequest.getLanguage()).removeDuplicateHits(Arrays.asList(results.getHits().hits()));
+        if (hits.size() > limit) {
+            hits = hits.subList(0, limit);
         }
-        return resultJsonObjects;
+        return hits;
+    }
+
+    /**
+     * converts and deduplicates the hits of a search for the request
+     */
+    List<JSONObject> convert(R photonRequest, SearchResponse results) {
+        return new ConvertToJson(photonRequest.getLanguage()).convertHits(selectHits(photonRequest, results));
     }
 
     @Override
@@ -5,9 +5,12 @@ import de.komoot.photon.query.ReverseRequest;
 import de.komoot.photon.query.TagFilterQueryBuilder;
 import de.komoot.photon.utils.ConvertToJson;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
 import org.json.JSONObject;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author svantulden
@@ -21,14 +24,36 @@ public abstract class AbstractReverseRequestHandler<R extends ReverseRequest> im
 
     @Override
     public List<JSONObject> handle(R photonRequest) {
+        return new ConvertToJson(photonRequest.getLanguage()).convertHits(handleHits(photonRequest));
+    }
+
+    @Override
+    public CompletableFuture<List<JSONObject>> handleAsync(final R photonRequest) {
+        return handleHitsAsync(photonRequest).thenApply(hits -> new ConvertToJson(photonRequest.getLanguage()).convertHits(hits));
+    }
+
+    @Override
+    public List<SearchHit> handleHits(R photonRequest) {
         TagFilterQueryBuilder queryBuilder = buildQuery(photonRequest);
         SearchResponse results = elasticsearchSearcher.search(queryBuilder.buildQuery(), photonRequest.getLimit(), photonRequest.getLocation(),
-                photonRequest.getLocationDistanceSort());
-        List<JSONObject> resultJsonObjects = new ConvertToJson(photonRequest.getLanguage()).convert(results);
-        if (resultJsonObjects.size() > photonRequest.getLimit()) {
-            resultJsonObjects = resultJsonObjects.subList(0, photonRequest.getLimit());
+                photonRequest.getLocationDistanceSort(), ConvertToJson.getSourceFields(photonRequest.getLanguage()));
+        return selectHits(photonRequest, results);
+    }
+
+    @Override
+    public CompletableFuture<List<SearchHit>> handleHitsAsync(final R photonRequest) {
+        TagFilterQueryBuilder queryBuilder = buildQuery(photonRequest);
+        return elasticsearchSearcher.searchAsync(queryBuilder.buildQuery(), photonRequest.getLimit(), photonRequest.getLocation(),
+                photonRequest.getLocationDistanceSort(), ConvertToJson.getSourceFields(photonRequest.getLanguage()))
+                .thenApply(results -> selectHits(photonRequest, results));
+    }
+
+    private List<SearchHit> selectHits(R photonRequest, SearchResponse results) {
+        List<SearchHit> hits = Arrays.asList(results.getHits().hits());
+        if (hits.size() > photonRequest.getLimit()) {
+            hits = hits.subList(0, photonRequest.getLimit());
         }
-        return resultJsonObjects;
+        return hits;
     }
 
     /**
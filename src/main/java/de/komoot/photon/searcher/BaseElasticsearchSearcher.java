@@ -1,33 +1,232 @@
 package de.komoot.photon.searcher;
 
+import com.google.common.collect.Lists;
+import de.komoot.photon.elasticsearch.Server;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ListenableActionFuture;
+import org.elasticsearch.action.search.MultiSearchRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.QueryBuilder;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
 /**
  * Created by Sachin Dole on 2/12/2015.
  */
+@Slf4j
 public class BaseElasticsearchSearcher implements ElasticsearchSearcher {
+    public static final int DEFAULT_FALLBACK_DEADLINE_MILLIS = 50;
+
+    /**
+     * searches sent with one multi search request by {@link #searchAll}
+     */
+    static final int MULTI_SEARCH_CHUNK_SIZE = 100;
 
     private Client client;
+    private final FallbackStrategy fallbackStrategy;
+    private final long fallbackDeadlineMillis;
 
     public BaseElasticsearchSearcher(Client client) {
+        this(client, FallbackStrategy.SEQUENTIAL, DEFAULT_FALLBACK_DEADLINE_MILLIS);
+    }
+
+    /**
+     * @param fallbackStrategy       how the lenient query is run if the strict query finds nothing
+     * @param fallbackDeadlineMillis time the strict query may take before the lenient query is started, used by
+     *                               {@link FallbackStrategy#DEADLINE}
+     */
+    public BaseElasticsearchSearcher(Client client, FallbackStrategy fallbackStrategy, long fallbackDeadlineMillis) {
         this.client = client;
+        this.fallbackStrategy = fallbackStrategy;
+        this.fallbackDeadlineMillis = fallbackDeadlineMillis;
     }
 
     @Override
-    public SearchResponse search(QueryBuilder queryBuilder, Integer limit) {
+    public SearchRequestBuilder prepareSearch(QueryBuilder queryBuilder, Integer limit, String[] sourceFields) {
         TimeValue timeout = TimeValue.timeValueSeconds(7);
-        return client.prepareSearch("photon").
+        SearchRequestBuilder builder = client.prepareSearch(Server.INDEX_ALIAS).
                 setSearchType(SearchType.QUERY_AND_FETCH).
                 setQuery(queryBuilder).
                 setSize(limit).
-                setTimeout(timeout).
-                execute().
-                actionGet();
+                setTimeout(timeout);
+        if (sourceFields != null) {
+            builder.setFetchSource(sourceFields, null);
+        }
+        return builder;
+    }
+
+    @Override
+    public SearchResponse search(QueryBuilder queryBuilder, Integer limit) {
+        return search(queryBuilder, limit, null);
+    }
 
+    @Override
+    public SearchResponse search(QueryBuilder queryBuilder, Integer limit, String[] sourceFields) {
+        return prepareSearch(queryBuilder, limit, sourceFields).execute().actionGet();
+    }
+
+    @Override
+    public List<SearchResponse> searchAll(List<SearchRequestBuilder> searches) {
+        return multiSearch(client, searches);
+    }
+
+    /**
+     * sends the searches with multi search requests of {@link #MULTI_SEARCH_CHUNK_SIZE} searches
+     *
+     * @return the responses in the order of the searches
+     */
+    static List<SearchResponse> multiSearch(Client client, List<SearchRequestBuilder> searches) {
+        // all chunks are sent before waiting for the first one
+        List<ListenableActionFuture<MultiSearchResponse>> chunks = new ArrayList<>();
+        for (List<SearchRequestBuilder> chunk : Lists.partition(searches, MULTI_SEARCH_CHUNK_SIZE)) {
+            MultiSearchRequestBuilder multiSearch = client.prepareMultiSearch();
+            for (SearchRequestBuilder search : chunk) {
+                multiSearch.add(search);
+            }
+            chunks.add(multiSearch.execute());
+        }
+
+        List<SearchResponse> responses = new ArrayList<>(searches.size());
+        for (ListenableActionFuture<MultiSearchResponse> chunk : chunks) {
+            for (MultiSearchResponse.Item response : chunk.actionGet().getResponses()) {
+                if (response.isFailure()) {
+                    throw new RuntimeException("search failed: " + response.getFailureMessage(), response.getFailure());
+                }
+                responses.add(response.getResponse());
+            }
+        }
+        return responses;
+    }
+
+    @Override
+    public CompletableFuture<SearchResponse> searchAsync(QueryBuilder queryBuilder, Integer limit, String[] sourceFields) {
+        return SearchFutures.execute(prepareSearch(queryBuilder, limit, sourceFields));
     }
 
+    /**
+     * the deadline strategy needs a thread waiting for the strict query, asynchronous searches run the queries one after the other with it
+     */
+    @Override
+    public CompletableFuture<SearchResponse> searchAsync(QueryBuilder strictQuery, Supplier<QueryBuilder> lenientQuery, Integer limit,
+                                                         String[] sourceFields) {
+        if (fallbackStrategy != FallbackStrategy.MULTI_SEARCH) {
+            return ElasticsearchSearcher.super.searchAsync(strictQuery, lenientQuery, limit, sourceFields);
+        }
+
+        final long startMillis = System.currentTimeMillis();
+        return SearchFutures.execute(prepareMultiSearch(strictQuery, lenientQuery.get(), limit, sourceFields))
+                .thenApply(response -> selectResults(response.getResponses(), startMillis));
+    }
+
+    @Override
+    public SearchResponse search(QueryBuilder strictQuery, Supplier<QueryBuilder> lenientQuery, Integer limit, String[] sourceFields) {
+        long startMillis = System.currentTimeMillis();
+        switch (fallbackStrategy) {
+        case MULTI_SEARCH:
+            return searchCombined(strictQuery, lenientQuery.get(), limit, sourceFields, startMillis);
+        case DEADLINE:
+            return searchWithDeadline(strictQuery, lenientQuery, limit, sourceFields, startMillis);
+        default:
+            SearchResponse results = search(strictQuery, limit, sourceFields);
+            if (results.getHits().getTotalHits() > 0) {
+                logPhases("strict", startMillis, -1);
+                return results;
+            }
+            long lenientMillis = System.currentTimeMillis();
+            results = search(lenientQuery.get(), limit, sourceFields);
+            logPhases("lenient", startMillis, lenientMillis);
+            return results;
+        }
+    }
+
+    /**
+     * both queries in one request, the strict results win if there are any
+     */
+    private SearchResponse searchCombined(QueryBuilder strictQuery, QueryBuilder lenientQuery, Integer limit, String[] sourceFields,
+                                          long startMillis) {
+        return selectResults(prepareMultiSearch(strictQuery, lenientQuery, limit, sourceFields).execute().actionGet().getResponses(), startMillis);
+    }
+
+    private MultiSearchRequestBuilder prepareMultiSearch(QueryBuilder strictQuery, QueryBuilder lenientQuery, Integer limit, String[] sourceFields) {
+        return client.prepareMultiSearch()
+                .add(prepareSearch(strictQuery, limit, sourceFields))
+                .add(prepareSearch(lenientQuery, limit, sourceFields));
+    }
+
+    private SearchResponse selectResults(MultiSearchResponse.Item[] responses, long startMillis) {
+        for (MultiSearchResponse.Item response : responses) {
+            if (response.isFailure()) {
+                throw new RuntimeException("search failed: " + response.getFailureMessage(), response.getFailure());
+            }
+        }
+
+        boolean strict = responses[0].getResponse().getHits().getTotalHits() > 0;
+        logPhases(strict ? "strict" : "lenient", startMillis, -1);
+        return strict ? responses[0].getResponse() : responses[1].getResponse();
+    }
+
+    /**
+     * starts the lenient query early if the strict query is slow. A lenient query that is not needed is left to finish on its own,
+     * its results are dropped.
+     */
+    private SearchResponse searchWithDeadline(QueryBuilder strictQuery, Supplier<QueryBuilder> lenientQuery, Integer limit, String[] sourceFields,
+                                              long startMillis) {
+        ListenableActionFuture<SearchResponse> strict = prepareSearch(strictQuery, limit, sourceFields).execute();
+        ListenableActionFuture<SearchResponse> lenient = null;
+        long lenientMillis = -1;
+        try {
+            SearchResponse strictResults;
+            try {
+                strictResults = strict.get(fallbackDeadlineMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                lenientMillis = System.currentTimeMillis();
+                lenient = prepareSearch(lenientQuery.get(), limit, sourceFields).execute();
+                strictResults = strict.get();
+            }
+            if (strictResults.getHits().getTotalHits() > 0) {
+                logPhases("strict", startMillis, lenientMillis);
+                return strictResults;
+            }
+
+            if (lenient == null) {
+                lenientMillis = System.currentTimeMillis();
+                lenient = prepareSearch(lenientQuery.get(), limit, sourceFields).execute();
+            }
+            SearchResponse results = lenient.get();
+            logPhases("lenient", startMillis, lenientMillis);
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("search interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("search failed", e.getCause());
+        }
+    }
+
+    /**
+     * @param used          query whose results are returned
+     * @param lenientMillis start of the lenient query, -1 if it was not run
+     */
+    private void logPhases(String used, long startMillis, long lenientMillis) {
+        if (!log.isDebugEnabled()) return;
+
+        long endMillis = System.currentTimeMillis();
+        if (lenientMillis < 0) {
+            log.debug(String.format("%s search: %s results in %d ms", fallbackStrategy.getName(), used, endMillis - startMillis));
+        } else {
+            log.debug(String.format("%s search: %s results in %d ms, strict phase alone %d ms, lenient phase %d ms", fallbackStrategy.getName(), used,
+                    endMillis - startMillis, lenientMillis - startMillis, endMillis - lenientMillis));
+        }
+    }
 }
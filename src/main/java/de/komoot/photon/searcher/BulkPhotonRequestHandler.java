@@ -0,0 +1,74 @@
+package de.komoot.photon.searcher;
+
+import de.komoot.photon.query.PhotonRequest;
+import de.komoot.photon.query.ScoringMode;
+import de.komoot.photon.utils.ConvertToJson;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * answers many {@link PhotonRequest}s at once.
+ * <p/>
+ * The strict queries of all requests are sent with {@link ElasticsearchSearcher#searchAll}, then the lenient queries of the requests
+ * that found nothing. The hits are converted in parallel.
+ */
+public class BulkPhotonRequestHandler {
+    private final ElasticsearchSearcher elasticsearchSearcher;
+    private final PhotonRequestHandlerFactory requestHandlerFactory;
+
+    public BulkPhotonRequestHandler(ElasticsearchSearcher elasticsearchSearcher) {
+        this(elasticsearchSearcher, ScoringMode.SCRIPT);
+    }
+
+    /**
+     * @param scoringMode how results are scored
+     */
+    public BulkPhotonRequestHandler(ElasticsearchSearcher elasticsearchSearcher, ScoringMode scoringMode) {
+        this.elasticsearchSearcher = elasticsearchSearcher;
+        this.requestHandlerFactory = new PhotonRequestHandlerFactory(elasticsearchSearcher, null, scoringMode);
+    }
+
+    /**
+     * @return the results of each request, in the order of the requests
+     */
+    public <R extends PhotonRequest> List<List<JSONObject>> handle(final List<R> photonRequests) {
+        final List<AbstractPhotonRequestHandler<R>> handlers = new ArrayList<>(photonRequests.size());
+        List<SearchRequestBuilder> strictSearches = new ArrayList<>(photonRequests.size());
+        for (R photonRequest : photonRequests) {
+            AbstractPhotonRequestHandler<R> handler = requestHandlerFactory.createSearchHandler(photonRequest);
+            handlers.add(handler);
+            strictSearches.add(prepareSearch(handler, photonRequest, false));
+        }
+        final List<SearchResponse> responses = new ArrayList<>(elasticsearchSearcher.searchAll(strictSearches));
+
+        List<Integer> emptyResponses = new ArrayList<>();
+        List<SearchRequestBuilder> lenientSearches = new ArrayList<>();
+        for (int i = 0; i < responses.size(); i++) {
+            if (responses.get(i).getHits().getTotalHits() == 0) {
+                emptyResponses.add(i);
+                lenientSearches.add(prepareSearch(handlers.get(i), photonRequests.get(i), true));
+            }
+        }
+        if (!lenientSearches.isEmpty()) {
+            List<SearchResponse> lenientResponses = elasticsearchSearcher.searchAll(lenientSearches);
+            for (int i = 0; i < emptyResponses.size(); i++) {
+                responses.set(emptyResponses.get(i), lenientResponses.get(i));
+            }
+        }
+
+        return IntStream.range(0, photonRequests.size()).parallel()
+                .mapToObj(i -> handlers.get(i).convert(photonRequests.get(i), responses.get(i)))
+                .collect(Collectors.toList());
+    }
+
+    private <R extends PhotonRequest> SearchRequestBuilder prepareSearch(AbstractPhotonRequestHandler<R> handler, R photonRequest, boolean lenient) {
+        return elasticsearchSearcher.prepareSearch(lenient ? handler.lenientQuery(photonRequest).get() : handler.buildQuery(photonRequest).buildQuery(),
+                handler.getExtendedLimit(photonRequest), ConvertToJson.getSourceFields(photonRequest.getLanguage()));
+    }
+}
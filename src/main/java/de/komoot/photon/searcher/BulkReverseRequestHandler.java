@@ -0,0 +1,298 @@
+package de.komoot.photon.searcher;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.PrecisionModel;
+import de.komoot.photon.query.ReverseQueryBuilder;
+import de.komoot.photon.query.ReverseRequest;
+import de.komoot.photon.utils.ConvertToJson;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.geo.GeoDistance;
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.common.unit.DistanceUnit;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.GeoDistanceSortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.json.JSONObject;
+
+import java.util.*;
+
+/**
+ * answers many {@link ReverseRequest}s at once, typically the points of a gps trace.
+ * <p/>
+ * Points that are equal at the configured number of decimals are looked up once. Points sorted by distance are grouped into grid cells of
+ * {@link #cellSize} degrees: one search per cell finds the places around all of its points, sorted by distance from the cell's center,
+ * and each point picks its nearest places from them by the distances elasticsearch computed for it. A point whose nearest places could
+ * lie beyond the places found for its cell is searched on its own, so the results are those of single reverse requests.
+ */
+public class BulkReverseRequestHandler {
+    public static final int DEFAULT_PRECISION = 6;
+    public static final double DEFAULT_CELL_SIZE = 0.01;
+
+    /**
+     * places searched for a cell
+     */
+    static final int CELL_CANDIDATES = 500;
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory(new PrecisionModel(), 4326);
+
+    private final ElasticsearchReverseSearcher elasticsearchSearcher;
+    private final double precisionFactor;
+    private final double cellSize;
+
+    /**
+     * @param precision number of decimals points are rounded to before they are looked up
+     * @param cellSize  size of the grid cells in degrees
+     */
+    public BulkReverseRequestHandler(ElasticsearchReverseSearcher elasticsearchSearcher, int precision, double cellSize) {
+        this.elasticsearchSearcher = elasticsearchSearcher;
+        this.precisionFactor = Math.pow(10, precision);
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * @return the results of each request, in the order of the requests, converted when they are read
+     */
+    public <R extends ReverseRequest> List<List<JSONObject>> handle(List<R> reverseRequests) {
+        Map<String, Lookup> lookups = new LinkedHashMap<>();
+        List<Lookup> requestLookups = new ArrayList<>(reverseRequests.size());
+        for (R reverseRequest : reverseRequests) {
+            Point location = round(reverseRequest.getLocation());
+            String key = location.getX() + "," + location.getY() + "|" + getParameters(reverseRequest);
+            Lookup lookup = lookups.get(key);
+            if (lookup == null) {
+                lookup = new Lookup(new ReverseRequest(location, null, reverseRequest.getLanguage(), reverseRequest.getRadius(),
+                        reverseRequest.getQueryStringFilter(), reverseRequest.getLimit(), reverseRequest.getLocationDistanceSort()));
+                lookups.put(key, lookup);
+            }
+            requestLookups.add(lookup);
+        }
+
+        Map<String, List<Lookup>> cells = new LinkedHashMap<>();
+        List<Lookup> singles = new ArrayList<>();
+        for (Lookup lookup : lookups.values()) {
+            if (!lookup.request.getLocationDistanceSort()) {
+                // results sorted by score cannot be picked locally
+                singles.add(lookup);
+                continue;
+            }
+            Point location = lookup.request.getLocation();
+            String key = (long) Math.floor(location.getX() / cellSize) + "," + (long) Math.floor(location.getY() / cellSize) + "|"
+                    + getParameters(lookup.request);
+            List<Lookup> cell = cells.get(key);
+            if (cell == null) {
+                cell = new ArrayList<>();
+                cells.put(key, cell);
+            }
+            cell.add(lookup);
+        }
+
+        List<Cell> cellSearches = new ArrayList<>();
+        for (List<Lookup> cell : cells.values()) {
+            if (cell.size() > 1) {
+                cellSearches.add(new Cell(cell));
+            } else {
+                singles.addAll(cell);
+            }
+        }
+
+        List<SearchRequestBuilder> searches = new ArrayList<>(cellSearches.size() + singles.size());
+        for (Cell cell : cellSearches) {
+            searches.add(cell.prepareSearch());
+        }
+        for (Lookup lookup : singles) {
+            searches.add(lookup.prepareSearch());
+        }
+        List<SearchResponse> responses = elasticsearchSearcher.searchAll(searches);
+
+        List<Lookup> unresolved = new ArrayList<>();
+        for (int i = 0; i < cellSearches.size(); i++) {
+            Cell cell = cellSearches.get(i);
+            for (int j = 0; j < cell.lookups.size(); j++) {
+                if (!cell.resolve(j, responses.get(i))) {
+                    unresolved.add(cell.lookups.get(j));
+                }
+            }
+        }
+        for (int i = 0; i < singles.size(); i++) {
+            singles.get(i).setHits(responses.get(cellSearches.size() + i));
+        }
+
+        if (!unresolved.isEmpty()) {
+            searches = new ArrayList<>(unresolved.size());
+            for (Lookup lookup : unresolved) {
+                searches.add(lookup.prepareSearch());
+            }
+            responses = elasticsearchSearcher.searchAll(searches);
+            for (int i = 0; i < unresolved.size(); i++) {
+                unresolved.get(i).setHits(responses.get(i));
+            }
+        }
+
+        return Lists.transform(requestLookups, new Function<Lookup, List<JSONObject>>() {
+            @Override
+            public List<JSONObject> apply(Lookup lookup) {
+                return lookup.getResults();
+            }
+        });
+    }
+
+    private Point round(Point location) {
+        return createPoint(Math.round(location.getX() * precisionFactor) / precisionFactor,
+                Math.round(location.getY() * precisionFactor) / precisionFactor);
+    }
+
+    private static Point createPoint(double lon, double lat) {
+        return GEOMETRY_FACTORY.createPoint(new Coordinate(lon, lat));
+    }
+
+    private static String getParameters(ReverseRequest request) {
+        return request.getLanguage() + "|" + request.getRadius() + "|" + request.getLimit() + "|" + request.getQueryStringFilter() + "|"
+                + request.getLocationDistanceSort();
+    }
+
+    /**
+     * @return distance in km as used by elasticsearch's distance filter and sort
+     */
+    private static double distance(Point location, double lon, double lat) {
+        return GeoDistance.ARC.calculate(location.getY(), location.getX(), lat, lon, DistanceUnit.KILOMETERS);
+    }
+
+    private static GeoDistanceSortBuilder distanceSort(Point location) {
+        return SortBuilders.geoDistanceSort("coordinate", new GeoPoint(location.getY(), location.getX())).unit(DistanceUnit.KILOMETERS)
+                .order(SortOrder.ASC);
+    }
+
+    /**
+     * @return distance in km as elasticsearch sorted the hit by
+     */
+    private static double getSortDistance(SearchHit hit, int sort) {
+        return ((Number) hit.getSortValues()[sort]).doubleValue();
+    }
+
+    /**
+     * a distinct point of the request
+     */
+    private class Lookup {
+        private final ReverseRequest request;
+        private List<SearchHit> hits;
+        private List<JSONObject> results;
+
+        Lookup(ReverseRequest request) {
+            this.request = request;
+        }
+
+        SearchRequestBuilder prepareSearch() {
+            return elasticsearchSearcher.prepareSearch(
+                    ReverseQueryBuilder.builder(request.getLocation(), request.getRadius(), request.getQueryStringFilter()).buildQuery(),
+                    request.getLimit(), request.getLocation(), request.getLocationDistanceSort(),
+                    ConvertToJson.getSourceFields(request.getLanguage()));
+        }
+
+        void setHits(SearchResponse response) {
+            hits = Arrays.asList(response.getHits().hits());
+        }
+
+        List<JSONObject> getResults() {
+            if (results == null) {
+                results = new ConvertToJson(request.getLanguage()).convertHits(hits);
+            }
+            return results;
+        }
+    }
+
+    /**
+     * points of one grid cell, searched together
+     */
+    private class Cell {
+        private final List<Lookup> lookups;
+        private final ReverseRequest request;
+        private final Point center;
+        private final double radius;
+
+        Cell(List<Lookup> lookups) {
+            this.lookups = lookups;
+            // all points of a cell share their parameters
+            this.request = lookups.get(0).request;
+
+            double lon = 0;
+            double lat = 0;
+            for (Lookup lookup : lookups) {
+                lon += lookup.request.getLocation().getX();
+                lat += lookup.request.getLocation().getY();
+            }
+            this.center = createPoint(lon / lookups.size(), lat / lookups.size());
+
+            double farthest = 0;
+            for (Lookup lookup : lookups) {
+                Point location = lookup.request.getLocation();
+                farthest = Math.max(farthest, distance(center, location.getX(), location.getY()));
+            }
+            this.radius = request.getRadius() + farthest;
+        }
+
+        /**
+         * the places are sorted by distance from the center, the distances from each point only fill the sort values of the hits
+         */
+        SearchRequestBuilder prepareSearch() {
+            SearchRequestBuilder search = elasticsearchSearcher.prepareSearch(
+                    ReverseQueryBuilder.builder(center, radius, request.getQueryStringFilter()).buildQuery(),
+                    Math.max(CELL_CANDIDATES, request.getLimit()), center, false, ConvertToJson.getSourceFields(request.getLanguage()));
+            search.addSort(distanceSort(center));
+            for (Lookup lookup : lookups) {
+                search.addSort(distanceSort(lookup.request.getLocation()));
+            }
+            return search;
+        }
+
+        /**
+         * picks the nearest places of the point from the places found for the cell
+         *
+         * @param index index of the point's lookup in the cell
+         * @return false if places missing from the response could be among the point's results
+         */
+        boolean resolve(int index, SearchResponse response) {
+            Lookup lookup = lookups.get(index);
+            SearchHit[] candidates = response.getHits().hits();
+            // all places up to this distance from the center are in the response
+            double covered = radius;
+            if (response.getHits().getTotalHits() > candidates.length) {
+                covered = candidates.length == 0 ? 0 : getSortDistance(candidates[candidates.length - 1], 0);
+            }
+
+            final Point location = lookup.request.getLocation();
+            final Map<SearchHit, Double> distances = new HashMap<>();
+            List<SearchHit> nearest = new ArrayList<>();
+            for (SearchHit candidate : candidates) {
+                double distance = getSortDistance(candidate, index + 1);
+                if (distance <= lookup.request.getRadius()) {
+                    distances.put(candidate, distance);
+                    nearest.add(candidate);
+                }
+            }
+            Collections.sort(nearest, new Comparator<SearchHit>() {
+                @Override
+                public int compare(SearchHit a, SearchHit b) {
+                    return Double.compare(distances.get(a), distances.get(b));
+                }
+            });
+
+            int limit = lookup.request.getLimit();
+            if (nearest.size() > limit) {
+                nearest = nearest.subList(0, limit);
+            }
+            double needed = nearest.size() < limit ? lookup.request.getRadius() : limit == 0 ? 0 : distances.get(nearest.get(limit - 1));
+            if (distance(center, location.getX(), location.getY()) + needed > covered) {
+                return false;
+            }
+
+            lookup.hits = nearest;
+            return true;
+        }
+    }
+}
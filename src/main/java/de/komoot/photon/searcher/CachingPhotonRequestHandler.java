@@ -0,0 +1,57 @@
+package de.komoot.photon.searcher;
+
+import de.komoot.photon.query.PhotonRequest;
+import org.elasticsearch.search.SearchHit;
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * answers repeated requests from a {@link SearchResultCache}, only the first of them is passed on to the wrapped handler.
+ */
+public class CachingPhotonRequestHandler<R extends PhotonRequest> implements PhotonRequestHandler<R> {
+    private final PhotonRequestHandler<R> handler;
+    private final SearchResultCache cache;
+
+    public CachingPhotonRequestHandler(PhotonRequestHandler<R> handler, SearchResultCache cache) {
+        this.handler = handler;
+        this.cache = cache;
+    }
+
+    @Override
+    public List<JSONObject> handle(final R photonRequest) {
+        return cache.get(photonRequest, new Callable<List<JSONObject>>() {
+            @Override
+            public List<JSONObject> call() {
+                return handler.handle(photonRequest);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<JSONObject>> handleAsync(final R photonRequest) {
+        List<JSONObject> cached = cache.getIfPresent(photonRequest);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        // concurrent misses for the same request are all searched, unlike with handle()
+        return handler.handleAsync(photonRequest).thenApply(results -> cache.put(photonRequest, results));
+    }
+
+    @Override
+    public List<SearchHit> handleHits(R photonRequest) {
+        return handler.handleHits(photonRequest);
+    }
+
+    @Override
+    public CompletableFuture<List<SearchHit>> handleHitsAsync(R photonRequest) {
+        return handler.handleHitsAsync(photonRequest);
+    }
+
+    @Override
+    public String dumpQuery(R photonRequest) {
+        return handler.dumpQuery(photonRequest);
+    }
+}
@@ -1,12 +1,39 @@
 package de.komoot.photon.searcher;
 
 import com.vividsolutions.jts.geom.Point;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.index.query.QueryBuilder;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author svantulden
  */
 public interface ElasticsearchReverseSearcher {
     SearchResponse search(QueryBuilder queryBuilder, Integer limit, Point location, Boolean locationDistanceSort);
+
+    /**
+     * @param sourceFields source fields returned with the hits, null for the whole source
+     */
+    SearchResponse search(QueryBuilder queryBuilder, Integer limit, Point location, Boolean locationDistanceSort, String[] sourceFields);
+
+    /**
+     * @return search to be run with {@link #searchAll}
+     */
+    SearchRequestBuilder prepareSearch(QueryBuilder queryBuilder, Integer limit, Point location, Boolean locationDistanceSort, String[] sourceFields);
+
+    /**
+     * runs several searches with a few multi search requests instead of one request each
+     *
+     * @return the responses in the order of the searches
+     */
+    List<SearchResponse> searchAll(List<SearchRequestBuilder> searches);
+
+    /**
+     * like {@link #search(QueryBuilder, Integer, Point, Boolean, String[])}, without waiting for the response
+     */
+    CompletableFuture<SearchResponse> searchAsync(QueryBuilder queryBuilder, Integer limit, Point location, Boolean locationDistanceSort,
+                                                  String[] sourceFields);
 }
@@ -1,8 +1,13 @@
 package de.komoot.photon.searcher;
 
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.index.query.QueryBuilder;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
 /**
  * This class handles all search execution that is specific to elastic search.
  * <p/>
@@ -10,4 +15,52 @@ import org.elasticsearch.index.query.QueryBuilder;
  */
 public interface ElasticsearchSearcher {
     SearchResponse search(QueryBuilder queryBuilder, Integer limit);
-}
\ No newline at end of file
+
+    /**
+     * @param sourceFields source fields returned with the hits, null for the whole source
+     */
+    SearchResponse search(QueryBuilder queryBuilder, Integer limit, String[] sourceFields);
+
+    /**
+     * searches with the strict query and returns the results of the lenient query if the strict query finds nothing
+     *
+     * @param strictQuery  query that is tried first
+     * @param lenientQuery creates the lenient query, every call must return an independent query
+     * @param sourceFields source fields returned with the hits, null for the whole source
+     */
+    default SearchResponse search(QueryBuilder strictQuery, Supplier<QueryBuilder> lenientQuery, Integer limit, String[] sourceFields) {
+        SearchResponse results = search(strictQuery, limit, sourceFields);
+        if (results.getHits().getTotalHits() == 0) {
+            results = search(lenientQuery.get(), limit, sourceFields);
+        }
+        return results;
+    }
+
+    /**
+     * @param sourceFields source fields returned with the hits, null for the whole source
+     * @return search to be run with {@link #searchAll}
+     */
+    SearchRequestBuilder prepareSearch(QueryBuilder queryBuilder, Integer limit, String[] sourceFields);
+
+    /**
+     * runs several searches with a few multi search requests instead of one request each
+     *
+     * @return the responses in the order of the searches
+     */
+    List<SearchResponse> searchAll(List<SearchRequestBuilder> searches);
+
+    /**
+     * like {@link #search(QueryBuilder, Integer, String[])}, without waiting for the response
+     */
+    CompletableFuture<SearchResponse> searchAsync(QueryBuilder queryBuilder, Integer limit, String[] sourceFields);
+
+    /**
+     * like {@link #search(QueryBuilder, Supplier, Integer, String[])}, without waiting for the responses
+     */
+    default CompletableFuture<SearchResponse> searchAsync(QueryBuilder strictQuery, final Supplier<QueryBuilder> lenientQuery, final Integer limit,
+                                                          final String[] sourceFields) {
+        return searchAsync(strictQuery, limit, sourceFields).thenCompose(results -> results.getHits().getTotalHits() > 0
+                ? CompletableFuture.completedFuture(results)
+                : searchAsync(lenientQuery.get(), limit, sourceFields));
+    }
+}
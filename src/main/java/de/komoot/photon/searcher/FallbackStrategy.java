@@ -0,0 +1,41 @@
+package de.komoot.photon.searcher;
+
+/**
+ * how a search falls back to the lenient (fuzzy) query when the strict query finds nothing
+ */
+public enum FallbackStrategy {
+    /**
+     * run the lenient query after the strict query returned no hits, two round trips for misspelled queries
+     */
+    SEQUENTIAL("sequential"),
+    /**
+     * send both queries in one multi search request, one round trip but the lenient query is always executed
+     */
+    MULTI_SEARCH("multi-search"),
+    /**
+     * start the lenient query only if the strict query did not return within a deadline
+     */
+    DEADLINE("deadline");
+
+    private final String name;
+
+    FallbackStrategy(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the strategy with the given command line name or null
+     */
+    public static FallbackStrategy forName(String name) {
+        for (FallbackStrategy strategy : values()) {
+            if (strategy.name.equals(name)) {
+                return strategy;
+            }
+        }
+        return null;
+    }
+}
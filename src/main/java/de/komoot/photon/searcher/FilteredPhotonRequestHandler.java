@@ -2,6 +2,7 @@ package de.komoot.photon.searcher;
 
 import de.komoot.photon.query.FilteredPhotonRequest;
 import de.komoot.photon.query.PhotonQueryBuilder;
+import de.komoot.photon.query.ScoringMode;
 import de.komoot.photon.query.TagFilterQueryBuilder;
 
 import java.util.Map;
@@ -16,6 +17,10 @@ public class FilteredPhotonRequestHandler extends AbstractPhotonRequestHandler<F
         super(elasticsearchSearcher);
     }
 
+    public FilteredPhotonRequestHandler(ElasticsearchSearcher elasticsearchSearcher, ScoringMode scoringMode) {
+        super(elasticsearchSearcher, scoringMode);
+    }
+
     @Override
     public TagFilterQueryBuilder buildQuery(FilteredPhotonRequest photonRequest) {
         Map<String, Set<String>> includeTags = photonRequest.tags();
@@ -27,7 +32,7 @@ public class FilteredPhotonRequestHandler extends AbstractPhotonRequestHandler<F
         Map<String, Set<String>> excludeTagValues = photonRequest.tagNotValues();
 
         return PhotonQueryBuilder.
-                builder(photonRequest.getQuery(), photonRequest.getLanguage()).
+                builder(photonRequest.getQuery(), photonRequest.getLanguage(), scoringMode).
                 withTags(includeTags).
                 withKeys(includeKeys).
                 withValues(includeValues).
@@ -1,9 +1,11 @@
 package de.komoot.photon.searcher;
 
 import de.komoot.photon.query.PhotonRequest;
+import org.elasticsearch.search.SearchHit;
 import org.json.JSONObject;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Given a {@link PhotonRequest photon request}, execute the search, process it (for example, de-duplicate) and respond with results formatted in a list of {@link JSONObject json
@@ -19,7 +21,32 @@ public interface PhotonRequestHandler<R extends PhotonRequest> {
      * @return a List of returned results
      */
     List<JSONObject> handle(R photonRequest);
+
+    /**
+     * Like {@link #handle}, without waiting for elasticsearch. Handlers that cannot search asynchronously complete the future in the calling
+     * thread.
+     *
+     * @param photonRequest the request
+     * @return a future of the returned results
+     */
+    default CompletableFuture<List<JSONObject>> handleAsync(R photonRequest) {
+        return CompletableFuture.completedFuture(handle(photonRequest));
+    }
     
+    /**
+     * Like {@link #handle}, without converting the hits: they are written straight from their source by
+     * {@link de.komoot.photon.utils.GeoJsonWriter#writeHits}. The hits are never cached.
+     *
+     * @param photonRequest the request
+     * @return the deduplicated hits up to the limit of the request
+     */
+    List<SearchHit> handleHits(R photonRequest);
+
+    /**
+     * Like {@link #handleHits}, without waiting for elasticsearch.
+     */
+    CompletableFuture<List<SearchHit>> handleHitsAsync(R photonRequest);
+
     /**
      * Get a JSON representation of the query that would be built from the request
      * 
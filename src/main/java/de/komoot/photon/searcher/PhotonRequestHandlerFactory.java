@@ -2,6 +2,7 @@ package de.komoot.photon.searcher;
 
 import de.komoot.photon.query.FilteredPhotonRequest;
 import de.komoot.photon.query.PhotonRequest;
+import de.komoot.photon.query.ScoringMode;
 
 /**
  * Created by Sachin Dole on 2/20/2015.
@@ -9,9 +10,21 @@ import de.komoot.photon.query.PhotonRequest;
 public class PhotonRequestHandlerFactory {
 
     private final ElasticsearchSearcher elasticsearchSearcher;
+    private final SearchResultCache resultCache;
+    private final ScoringMode scoringMode;
 
     public PhotonRequestHandlerFactory(ElasticsearchSearcher elasticsearchSearcher) {
+        this(elasticsearchSearcher, null, ScoringMode.SCRIPT);
+    }
+
+    /**
+     * @param resultCache cache for the results of all created handlers, null disables caching
+     * @param scoringMode how the created handlers score results
+     */
+    public PhotonRequestHandlerFactory(ElasticsearchSearcher elasticsearchSearcher, SearchResultCache resultCache, ScoringMode scoringMode) {
         this.elasticsearchSearcher = elasticsearchSearcher;
+        this.resultCache = resultCache;
+        this.scoringMode = scoringMode;
     }
 
     /**
@@ -20,11 +33,20 @@ public class PhotonRequestHandlerFactory {
      * search.
      */
     public <R extends PhotonRequest> PhotonRequestHandler<R> createHandler(R request) {
-        if (request instanceof FilteredPhotonRequest) {
-            return (PhotonRequestHandler<R>) new FilteredPhotonRequestHandler(elasticsearchSearcher);
-        } else {
-            return (PhotonRequestHandler<R>) new SimplePhotonRequestHandler(elasticsearchSearcher);
+        PhotonRequestHandler<R> handler = createSearchHandler(request);
+        if (resultCache != null) {
+            return new CachingPhotonRequestHandler<>(handler, resultCache);
         }
+        return handler;
+    }
 
+    /**
+     * @return handler searching elasticsearch directly, without the cache
+     */
+    <R extends PhotonRequest> AbstractPhotonRequestHandler<R> createSearchHandler(R request) {
+        if (request instanceof FilteredPhotonRequest) {
+            return (AbstractPhotonRequestHandler<R>) new FilteredPhotonRequestHandler(elasticsearchSearcher, scoringMode);
+        }
+        return (AbstractPhotonRequestHandler<R>) new SimplePhotonRequestHandler(elasticsearchSearcher, scoringMode);
     }
 }
@@ -1,6 +1,7 @@
 package de.komoot.photon.searcher;
 
 import com.vividsolutions.jts.geom.Point;
+import de.komoot.photon.elasticsearch.Server;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
@@ -11,6 +12,9 @@ import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.search.sort.SortOrder;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author svantulden
  */
@@ -24,15 +28,41 @@ public class ReverseElasticsearchSearcher implements ElasticsearchReverseSearche
     @Override
     public SearchResponse search(QueryBuilder queryBuilder, Integer limit, Point location,
                                  Boolean locationDistanceSort) {
+        return search(queryBuilder, limit, location, locationDistanceSort, null);
+    }
+
+    @Override
+    public SearchResponse search(QueryBuilder queryBuilder, Integer limit, Point location, Boolean locationDistanceSort,
+                                 String[] sourceFields) {
+        return prepareSearch(queryBuilder, limit, location, locationDistanceSort, sourceFields).execute().actionGet();
+    }
+
+    @Override
+    public CompletableFuture<SearchResponse> searchAsync(QueryBuilder queryBuilder, Integer limit, Point location, Boolean locationDistanceSort,
+                                                         String[] sourceFields) {
+        return SearchFutures.execute(prepareSearch(queryBuilder, limit, location, locationDistanceSort, sourceFields));
+    }
+
+    @Override
+    public List<SearchResponse> searchAll(List<SearchRequestBuilder> searches) {
+        return BaseElasticsearchSearcher.multiSearch(client, searches);
+    }
+
+    @Override
+    public SearchRequestBuilder prepareSearch(QueryBuilder queryBuilder, Integer limit, Point location, Boolean locationDistanceSort,
+                                              String[] sourceFields) {
         TimeValue timeout = TimeValue.timeValueSeconds(7);
 
-        SearchRequestBuilder builder = client.prepareSearch("photon").setSearchType(SearchType.QUERY_AND_FETCH)
+        SearchRequestBuilder builder = client.prepareSearch(Server.INDEX_ALIAS).setSearchType(SearchType.QUERY_AND_FETCH)
                 .setQuery(queryBuilder).setSize(limit).setTimeout(timeout);
 
         if (locationDistanceSort)
             builder.addSort(SortBuilders.geoDistanceSort("coordinate", new GeoPoint(location.getY(), location.getX()))
                     .order(SortOrder.ASC));
 
-        return builder.execute().actionGet();
+        if (sourceFields != null)
+            builder.setFetchSource(sourceFields, null);
+
+        return builder;
     }
 }
@@ -1,13 +1,33 @@
 package de.komoot.photon.searcher;
 
 import de.komoot.photon.query.ReverseRequest;
+import org.elasticsearch.search.SearchHit;
 import org.json.JSONObject;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author svantulden
  */
 public interface ReverseRequestHandler<R extends ReverseRequest> {
     List<JSONObject> handle(R reverseRequest);
+
+    /**
+     * like {@link #handle}, without waiting for elasticsearch
+     */
+    default CompletableFuture<List<JSONObject>> handleAsync(R reverseRequest) {
+        return CompletableFuture.completedFuture(handle(reverseRequest));
+    }
+
+    /**
+     * like {@link #handle}, without converting the hits: they are written straight from their source by
+     * {@link de.komoot.photon.utils.GeoJsonWriter#writeHits}
+     */
+    List<SearchHit> handleHits(R reverseRequest);
+
+    /**
+     * like {@link #handleHits}, without waiting for elasticsearch
+     */
+    CompletableFuture<List<SearchHit>> handleHitsAsync(R reverseRequest);
 }
@@ -0,0 +1,34 @@
+package de.komoot.photon.searcher;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * runs elasticsearch requests without waiting for their response.
+ */
+final class SearchFutures {
+    private SearchFutures() {
+    }
+
+    /**
+     * @return future completed by the thread receiving the response, dependent stages doing blocking work should use their own executor
+     */
+    static <T extends ActionResponse> CompletableFuture<T> execute(ActionRequestBuilder<?, T, ?> request) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        request.execute(new ActionListener<T>() {
+            @Override
+            public void onResponse(T response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+}
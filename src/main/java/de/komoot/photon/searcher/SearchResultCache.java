@@ -0,0 +1,132 @@
+package de.komoot.photon.searcher;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Point;
+import de.komoot.photon.query.FilteredPhotonRequest;
+import de.komoot.photon.query.PhotonRequest;
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * size-bounded cache of search results keyed by the normalized request.
+ * <p/>
+ * Requests differing only in case or white space of the query, in the order of their tag filters or in the location bias beyond
+ * {@link #biasPrecision} decimals share one entry. The cache is emptied whenever the index was updated.
+ */
+public class SearchResultCache {
+    public static final int DEFAULT_SIZE = 10000;
+    public static final int DEFAULT_BIAS_PRECISION = 3;
+
+    private final Cache<String, List<JSONObject>> cache;
+    private final int biasPrecision;
+
+    /**
+     * @param maximumSize   maximum number of cached results
+     * @param biasPrecision number of decimals the location bias is rounded to, 3 decimals are about 100m
+     */
+    public SearchResultCache(long maximumSize, int biasPrecision) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+        this.biasPrecision = Math.max(0, biasPrecision);
+    }
+
+    /**
+     * @param request search request
+     * @param loader  computes the results if they are not cached
+     * @return cached or computed results, must not be modified
+     */
+    public List<JSONObject> get(PhotonRequest request, final Callable<List<JSONObject>> loader) {
+        try {
+            return cache.get(getKey(request), new Callable<List<JSONObject>>() {
+                @Override
+                public List<JSONObject> call() throws Exception {
+                    return Collections.unmodifiableList(loader.call());
+                }
+            });
+        } catch (ExecutionException e) {
+            throw new RuntimeException("search failed", e.getCause());
+        }
+    }
+
+    /**
+     * @return cached results or null, must not be modified
+     */
+    public List<JSONObject> getIfPresent(PhotonRequest request) {
+        return cache.getIfPresent(getKey(request));
+    }
+
+    /**
+     * @return the results as they are cached, must not be modified
+     */
+    public List<JSONObject> put(PhotonRequest request, List<JSONObject> results) {
+        List<JSONObject> cached = Collections.unmodifiableList(results);
+        cache.put(getKey(request), cached);
+        return cached;
+    }
+
+    String getKey(PhotonRequest request) {
+        StringBuilder key = new StringBuilder();
+        key.append(request.getQuery().trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT))
+                .append('|').append(request.getLanguage())
+                .append('|').append(request.getLimit());
+
+        Envelope bbox = request.getBbox();
+        if (bbox != null) {
+            key.append("|bbox:").append(bbox.getMinX()).append(',').append(bbox.getMinY()).append(',').append(bbox.getMaxX()).append(',').append(bbox.getMaxY());
+        }
+
+        Point bias = request.getLocationForBias();
+        if (bias != null) {
+            key.append("|bias:").append(round(bias.getX())).append(',').append(round(bias.getY())).append(',').append(request.getScaleForBias());
+        }
+
+        if (request instanceof FilteredPhotonRequest) {
+            FilteredPhotonRequest filtered = (FilteredPhotonRequest) request;
+            key.append("|keys:").append(new TreeSet<>(filtered.keys()))
+                    .append("|values:").append(new TreeSet<>(filtered.values()))
+                    .append("|tags:").append(sorted(filtered.tags()))
+                    .append("|notkeys:").append(new TreeSet<>(filtered.notKeys()))
+                    .append("|notvalues:").append(new TreeSet<>(filtered.notValues()))
+                    .append("|nottags:").append(sorted(filtered.notTags()))
+                    .append("|tagnotvalues:").append(sorted(filtered.tagNotValues()));
+        }
+        return key.toString();
+    }
+
+    private String round(double coordinate) {
+        return String.format(Locale.ROOT, "%." + biasPrecision + "f", coordinate);
+    }
+
+    private static Map<String, Set<String>> sorted(Map<String, Set<String>> tags) {
+        Map<String, Set<String>> sorted = new TreeMap<>();
+        for (Map.Entry<String, Set<String>> e : tags.entrySet()) {
+            sorted.put(e.getKey(), new TreeSet<>(e.getValue()));
+        }
+        return sorted;
+    }
+
+    /**
+     * drops all cached results, called after the index was updated
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return size and hit/miss/eviction counters
+     */
+    public JSONObject getStats() {
+        CacheStats stats = cache.stats();
+        return new JSONObject()
+                .put("size", cache.size())
+                .put("hits", stats.hitCount())
+                .put("misses", stats.missCount())
+                .put("hit_rate", stats.hitRate())
+                .put("evictions", stats.evictionCount());
+    }
+}
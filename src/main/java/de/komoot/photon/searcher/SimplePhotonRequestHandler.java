@@ -2,6 +2,7 @@ package de.komoot.photon.searcher;
 
 import de.komoot.photon.query.PhotonQueryBuilder;
 import de.komoot.photon.query.PhotonRequest;
+import de.komoot.photon.query.ScoringMode;
 import de.komoot.photon.query.TagFilterQueryBuilder;
 
 /**
@@ -12,9 +13,13 @@ public class SimplePhotonRequestHandler extends AbstractPhotonRequestHandler<Pho
         super(elasticsearchSearcher);
     }
 
+    public SimplePhotonRequestHandler(ElasticsearchSearcher elasticsearchSearcher, ScoringMode scoringMode) {
+        super(elasticsearchSearcher, scoringMode);
+    }
+
     @Override
     public TagFilterQueryBuilder buildQuery(PhotonRequest photonRequest) {
-        return PhotonQueryBuilder.builder(photonRequest.getQuery(), photonRequest.getLanguage()).
+        return PhotonQueryBuilder.builder(photonRequest.getQuery(), photonRequest.getLanguage(), scoringMode).
                 withLocationBias(photonRequest.getLocationForBias(), photonRequest.getScaleForBias()).
                 withBoundingBox(photonRequest.getBbox());
     }
@@ -5,10 +5,13 @@ import com.google.common.collect.Sets;
 import de.komoot.photon.Constants;
 import de.komoot.photon.Utils;
 import de.komoot.photon.utils.Command;
+import de.komoot.photon.utils.ConvertToJson;
+import org.elasticsearch.search.SearchHit;
 import org.json.JSONObject;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This is copy over from the method
@@ -31,31 +34,59 @@ public class StreetDupesRemover implements Command<List<JSONObject>, List<JSONOb
         final HashSet<String> keys = Sets.newHashSet();
         for (JSONObject result : results) {
             final JSONObject properties = result.getJSONObject(Constants.PROPERTIES);
-            if (properties.has(Constants.OSM_KEY) && "highway".equals(properties.getString(Constants.OSM_KEY))) {
-                // result is a street
-                if (properties.has(Constants.POSTCODE) && properties.has(Constants.NAME)) {
-                    // street has a postcode and name
-                    String postcode = properties.getString(Constants.POSTCODE);
-                    String name = properties.getString(Constants.NAME);
-                    // OSM_VALUE is part of key to avoid deduplication of e.g. bus_stops and streets with same name 
-                    String key = (properties.has(Constants.OSM_VALUE) ? properties.getString(Constants.OSM_VALUE) : "") + ":";
-
-                    if (language.equals("nl")) {
-                        String onlyDigitsPostcode = Utils.stripNonDigits(postcode);
-                        key += onlyDigitsPostcode + ":" + name;
-                    } else {
-                        key += postcode + ":" + name;
-                    }
-
-                    if (keys.contains(key)) {
-                        // an osm highway object (e.g. street or bus_stop) with this osm_value + name + postcode is already part of the result list
-                        continue;
-                    }
-                    keys.add(key);
-                }
+            String key = getKey(properties.has(Constants.OSM_KEY) ? properties.getString(Constants.OSM_KEY) : null,
+                    properties.has(Constants.OSM_VALUE) ? properties.getString(Constants.OSM_VALUE) : null,
+                    properties.has(Constants.POSTCODE) ? properties.getString(Constants.POSTCODE) : null,
+                    properties.has(Constants.NAME) ? properties.getString(Constants.NAME) : null);
+            if (key != null && !keys.add(key)) {
+                // an osm highway object (e.g. street or bus_stop) with this osm_value + name + postcode is already part of the result list
+                continue;
             }
             filteredItems.add(result);
         }
         return filteredItems;
     }
+
+    /**
+     * like {@link #execute}, for hits that are not converted yet
+     */
+    public List<SearchHit> removeDuplicateHits(List<SearchHit> hits) {
+        List<SearchHit> filteredHits = Lists.newArrayListWithCapacity(hits.size());
+        final HashSet<String> keys = Sets.newHashSet();
+        for (SearchHit hit : hits) {
+            Map<String, Object> source = hit.getSource();
+            String key = getKey(getString(source, Constants.OSM_KEY), getString(source, Constants.OSM_VALUE), getString(source, Constants.POSTCODE),
+                    ConvertToJson.getLocalised(source, Constants.NAME, language));
+            if (key != null && !keys.add(key)) {
+                continue;
+            }
+            filteredHits.add(hit);
+        }
+        return filteredHits;
+    }
+
+    private static String getString(Map<String, Object> source, String key) {
+        Object value = source.get(key);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * @return the key streets with the same name and postcode share, null for places that are never removed
+     */
+    private String getKey(String osmKey, String osmValue, String postcode, String name) {
+        if (!"highway".equals(osmKey) || postcode == null || name == null) {
+            // only streets with a postcode and name
+            return null;
+        }
+
+        // OSM_VALUE is part of key to avoid deduplication of e.g. bus_stops and streets with same name
+        String key = (osmValue != null ? osmValue : "") + ":";
+        if (language.equals("nl")) {
+            String onlyDigitsPostcode = Utils.stripNonDigits(postcode);
+            key += onlyDigitsPostcode + ":" + name;
+        } else {
+            key += postcode + ":" + name;
+        }
+        return key;
+    }
 }
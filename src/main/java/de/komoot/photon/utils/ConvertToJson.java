@@ -8,6 +8,8 @@ import org.elasticsearch.search.SearchHit;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -18,18 +20,42 @@ import java.util.Map;
  */
 @Slf4j
 public class ConvertToJson implements OneWayConverter<SearchResponse, List<JSONObject>> {
-    private final static String[] KEYS_LANG_UNSPEC = {Constants.OSM_ID, Constants.OSM_VALUE, Constants.OSM_KEY, Constants.POSTCODE, Constants.HOUSENUMBER, Constants.COUNTRYCODE, Constants.OSM_TYPE};
-    private final static String[] KEYS_LANG_SPEC = {Constants.NAME, Constants.COUNTRY, Constants.CITY, Constants.STREET, Constants.STATE};
+    final static String[] KEYS_LANG_UNSPEC = {Constants.OSM_ID, Constants.OSM_VALUE, Constants.OSM_KEY, Constants.POSTCODE, Constants.HOUSENUMBER, Constants.COUNTRYCODE, Constants.OSM_TYPE};
+    final static String[] KEYS_LANG_SPEC = {Constants.NAME, Constants.COUNTRY, Constants.CITY, Constants.STREET, Constants.STATE};
     private final String lang;
 
     public ConvertToJson(String lang) {
         this.lang = lang;
     }
 
+    /**
+     * @param lang language the results are converted for
+     * @return source fields read by {@link #convert}, passed to elasticsearch so that the other language variants are not fetched
+     */
+    public static String[] getSourceFields(String lang) {
+        List<String> fields = Lists.newArrayListWithExpectedSize(KEYS_LANG_UNSPEC.length + 2 * KEYS_LANG_SPEC.length + 2);
+        fields.add("coordinate");
+        fields.add("extent");
+        Collections.addAll(fields, KEYS_LANG_UNSPEC);
+        for (String key : KEYS_LANG_SPEC) {
+            fields.add(key + ".default");
+            if (lang != null && !"default".equals(lang)) {
+                fields.add(key + "." + lang);
+            }
+        }
+        return fields.toArray(new String[fields.size()]);
+    }
+
     @Override
     public List<JSONObject> convert(SearchResponse searchResponse) {
-        SearchHit[] hits = searchResponse.getHits().hits();
-        final List<JSONObject> list = Lists.newArrayListWithExpectedSize(hits.length);
+        return convertHits(Arrays.asList(searchResponse.getHits().hits()));
+    }
+
+    /**
+     * @param hits hits picked from one or several responses
+     */
+    public List<JSONObject> convertHits(List<SearchHit> hits) {
+        final List<JSONObject> list = Lists.newArrayListWithExpectedSize(hits.size());
         for (SearchHit hit : hits) {
             final Map<String, Object> source = hit.getSource();
 
@@ -68,7 +94,10 @@ public class ConvertToJson implements OneWayConverter<SearchResponse, List<JSONO
         return list;
     }
 
-    private String getLocalised(Map<String, Object> source, String fieldName, String lang) {
+    /**
+     * @return the value of a language specific field in the given language, its default value if there is none
+     */
+    public static String getLocalised(Map<String, Object> source, String fieldName, String lang) {
         final Map<String, String> map = (Map<String, String>) source.get(fieldName);
         if (map == null) return null;
 
@@ -86,7 +115,7 @@ public class ConvertToJson implements OneWayConverter<SearchResponse, List<JSONO
         final Map<String, Double> coordinate = (Map<String, Double>) source.get("coordinate");
         if (coordinate != null) {
             point.put(Constants.TYPE, Constants.POINT);
-            point.put(Constants.COORDINATES, new JSONArray("[" + coordinate.get(Constants.LON) + "," + coordinate.get(Constants.LAT) + "]"));
+            point.put(Constants.COORDINATES, new JSONArray().put(coordinate.get(Constants.LON)).put(coordinate.get(Constants.LAT)));
         } else {
             log.error(String.format("invalid data [id=%s, type=%s], coordinate is missing!", source.get(Constants.OSM_ID), source.get(Constants.OSM_VALUE)));
         }
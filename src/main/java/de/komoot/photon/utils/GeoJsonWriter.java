@@ -0,0 +1,320 @@
+package de.komoot.photon.utils;
+
+import com.google.gson.stream.JsonWriter;
+import de.komoot.photon.Constants;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.search.SearchHit;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * writes places as geojson feature collection directly to a stream.
+ * <p/>
+ * Produces the same json as {@link ConvertToGeoJson} followed by {@code toString()}, without building the wrapping collection and the
+ * response string first. Search hits are written straight from their source, without converting them with {@link ConvertToJson}. Bulk
+ * results are written as a json array or as newline delimited json (ndjson).
+ * <p/>
+ * Every thread writes through a json writer and buffer of its own, reused for all responses it writes.
+ */
+@Slf4j
+public class GeoJsonWriter {
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+    private final ThreadLocal<Utf8Writer> writers = new ThreadLocal<>();
+
+    /**
+     * @param features places as converted by {@link ConvertToJson}
+     * @param out      stream the collection is written to, flushed but not closed
+     */
+    public void write(List<JSONObject> features, OutputStream out) throws IOException {
+        Utf8Writer writer = open(out);
+        boolean written = false;
+        try {
+            writeCollection(writer.json, features);
+            writer.flush();
+            written = true;
+        } finally {
+            close(writer, written);
+        }
+    }
+
+    /**
+     * writes the hits as {@link ConvertToJson} would convert them
+     *
+     * @param hits     hits of a search, with the source fields of {@link ConvertToJson#getSourceFields}
+     * @param language language the places are written in
+     * @param out      stream the collection is written to, flushed but not closed
+     */
+    public void writeHits(List<SearchHit> hits, String language, OutputStream out) throws IOException {
+        Utf8Writer writer = open(out);
+        boolean written = false;
+        try {
+            JsonWriter json = writer.json;
+            beginCollection(json);
+            for (SearchHit hit : hits) {
+                writeHit(json, hit.getSource(), language);
+            }
+            endCollection(json);
+            writer.flush();
+            written = true;
+        } finally {
+            close(writer, written);
+        }
+    }
+
+    /**
+     * writes one feature collection per result list, each is flushed as soon as it is written
+     *
+     * @param results places of several searches, converted while they are written if the iterable is lazy
+     * @param out     stream the collections are written to, flushed but not closed
+     * @param ndjson  true for one collection per line, false for a json array of collections
+     */
+    public void writeAll(Iterable<List<JSONObject>> results, OutputStream out, boolean ndjson) throws IOException {
+        Utf8Writer writer = open(out);
+        boolean written = false;
+        try {
+            JsonWriter json = writer.json;
+            if (ndjson) {
+                for (List<JSONObject> features : results) {
+                    writeCollection(json, features);
+                    writer.write('\n');
+                    writer.flush();
+                }
+            } else {
+                json.beginArray();
+                for (List<JSONObject> features : results) {
+                    writeCollection(json, features);
+                    writer.flush();
+                }
+                json.endArray();
+                writer.flush();
+            }
+            written = true;
+        } finally {
+            close(writer, written);
+        }
+    }
+
+    private Utf8Writer open(OutputStream out) {
+        Utf8Writer writer = writers.get();
+        if (writer == null) {
+            writer = new Utf8Writer();
+            writers.set(writer);
+        }
+        writer.out = out;
+        return writer;
+    }
+
+    /**
+     * a writer that failed may be left in the middle of a json value, it is not reused
+     */
+    private void close(Utf8Writer writer, boolean written) {
+        writer.out = null;
+        writer.count = 0;
+        writer.highSurrogate = 0;
+        if (!written) {
+            writers.remove();
+        }
+    }
+
+    private static void beginCollection(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name(Constants.TYPE).value("FeatureCollection");
+        writer.name("features").beginArray();
+    }
+
+    private static void endCollection(JsonWriter writer) throws IOException {
+        writer.endArray();
+        writer.endObject();
+    }
+
+    private static void writeCollection(JsonWriter writer, List<JSONObject> features) throws IOException {
+        beginCollection(writer);
+        for (JSONObject feature : features) {
+            writeObject(writer, feature);
+        }
+        endCollection(writer);
+    }
+
+    private static void writeHit(JsonWriter writer, Map<String, Object> source, String language) throws IOException {
+        writer.beginObject();
+        writer.name(Constants.TYPE).value(Constants.FEATURE);
+
+        writer.name(Constants.GEOMETRY).beginObject();
+        Map<String, Double> coordinate = (Map<String, Double>) source.get("coordinate");
+        if (coordinate != null) {
+            writer.name(Constants.TYPE).value(Constants.POINT);
+            writer.name(Constants.COORDINATES).beginArray().value(coordinate.get(Constants.LON)).value(coordinate.get(Constants.LAT)).endArray();
+        } else {
+            log.error(String.format("invalid data [id=%s, type=%s], coordinate is missing!", source.get(Constants.OSM_ID), source.get(Constants.OSM_VALUE)));
+        }
+        writer.endObject();
+
+        writer.name(Constants.PROPERTIES).beginObject();
+        for (String key : ConvertToJson.KEYS_LANG_UNSPEC) {
+            writeProperty(writer, key, source.get(key));
+        }
+        for (String key : ConvertToJson.KEYS_LANG_SPEC) {
+            writeProperty(writer, key, ConvertToJson.getLocalised(source, key, language));
+        }
+        Map<String, Object> extent = (Map<String, Object>) source.get("extent");
+        if (extent != null) {
+            List<List<Double>> coords = (List<List<Double>>) extent.get("coordinates");
+            writer.name("extent").beginArray()
+                    .value(coords.get(0).get(0)).value(coords.get(0).get(1)).value(coords.get(1).get(0)).value(coords.get(1).get(1))
+                    .endArray();
+        }
+        writer.endObject();
+
+        writer.endObject();
+    }
+
+    /**
+     * properties without a value are left out, like {@link JSONObject#put} does
+     */
+    private static void writeProperty(JsonWriter writer, String key, Object value) throws IOException {
+        if (value != null) {
+            writer.name(key);
+            writeValue(writer, value);
+        }
+    }
+
+    private static void writeObject(JsonWriter writer, JSONObject object) throws IOException {
+        writer.beginObject();
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            writer.name(key);
+            writeValue(writer, object.opt(key));
+        }
+        writer.endObject();
+    }
+
+    private static void writeValue(JsonWriter writer, Object value) throws IOException {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            writer.nullValue();
+        } else if (value instanceof JSONObject) {
+            writeObject(writer, (JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            writer.beginArray();
+            for (int i = 0; i < array.length(); i++) {
+                writeValue(writer, array.opt(i));
+            }
+            writer.endArray();
+        } else if (value instanceof Map) {
+            writer.beginObject();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                writer.name(entry.getKey());
+                writeValue(writer, entry.getValue());
+            }
+            writer.endObject();
+        } else if (value instanceof List) {
+            writer.beginArray();
+            for (Object element : (List<Object>) value) {
+                writeValue(writer, element);
+            }
+            writer.endArray();
+        } else if (value instanceof Number) {
+            writer.value((Number) value);
+        } else if (value instanceof Boolean) {
+            writer.value((Boolean) value);
+        } else {
+            writer.value(value.toString());
+        }
+    }
+
+    /**
+     * encodes utf-8 into a buffer of its own and writes it to the current stream when full or flushed. Its json writer is lenient, so it
+     * accepts one top-level value per response.
+     */
+    private static class Utf8Writer extends Writer {
+        private final byte[] buffer = new byte[8192];
+        private final JsonWriter json = new JsonWriter(this);
+        private int count = 0;
+        private char highSurrogate = 0;
+        private OutputStream out;
+
+        Utf8Writer() {
+            json.setLenient(true);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            if (buffer.length - count < 4) {
+                flushBuffer();
+            }
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate((char) c)) {
+                    int codePoint = Character.toCodePoint(high, (char) c);
+                    buffer[count++] = (byte) (0xf0 | (codePoint >> 18));
+                    buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    buffer[count++] = (byte) (0x80 | (codePoint & 0x3f));
+                    return;
+                }
+                // a lone surrogate is replaced like the jdk's encoder does
+                buffer[count++] = '?';
+                if (buffer.length - count < 3) {
+                    flushBuffer();
+                }
+            }
+
+            if (c < 0x80) {
+                buffer[count++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[count++] = (byte) (0xc0 | (c >> 6));
+                buffer[count++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate((char) c)) {
+                highSurrogate = (char) c;
+            } else if (Character.isLowSurrogate((char) c)) {
+                buffer[count++] = '?';
+            } else {
+                buffer[count++] = (byte) (0xe0 | (c >> 12));
+                buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[count++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                write(chars[i]);
+            }
+        }
+
+        @Override
+        public void write(String string, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                write(string.charAt(i));
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            if (count > 0) {
+                out.write(buffer, 0, count);
+                count = 0;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package de.komoot.photon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    public void testRejectsBeyondLimitAndQueue() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1000, 0, 10);
+        assertTrue(limiter.acquire());
+        assertTrue(limiter.acquire());
+        assertFalse(limiter.acquire());
+
+        limiter.release(10, true);
+        assertTrue(limiter.acquire());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    public void testQueuedRequestGetsReleasedSlot() throws InterruptedException {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1000, 1, 5000);
+        assertTrue(limiter.acquire());
+
+        Thread releasing = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                limiter.release(10, true);
+            }
+        });
+        releasing.start();
+        assertTrue(limiter.acquire());
+        releasing.join();
+    }
+
+    @Test
+    public void testQueueTimeout() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1000, 1, 20);
+        assertTrue(limiter.acquire());
+        assertFalse(limiter.acquire());
+    }
+
+    @Test
+    public void testSlowAndFailedRequestsLowerLimit() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(100, 1000, 0, 10);
+        limiter.acquire();
+        limiter.release(5000, true);
+        assertEquals(90, limiter.getLimit());
+
+        limiter.acquire();
+        limiter.release(10, false);
+        assertEquals(81, limiter.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+            limiter.release(5000, true);
+        }
+        assertEquals(AdaptiveConcurrencyLimiter.MIN_LIMIT, limiter.getLimit());
+    }
+
+    @Test
+    public void testBurstOfSlowRequestsLowersLimitOnce() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(200, 1000, 0, 10);
+        for (int i = 0; i < 200; i++) {
+            assertTrue(limiter.acquire());
+        }
+        for (int i = 0; i < 200; i++) {
+            limiter.release(5000, true);
+        }
+        assertEquals(180, limiter.getLimit());
+
+        // the next window is judged on its own
+        limiter.acquire();
+        limiter.release(5000, true);
+        assertEquals(162, limiter.getLimit());
+    }
+
+    @Test
+    public void testLimitRecoversWhenUsed() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1000, 0, 10);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+            limiter.release(5000, true);
+        }
+        assertEquals(1, limiter.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            int running = limiter.getLimit();
+            for (int j = 0; j < running; j++) {
+                assertTrue(limiter.acquire());
+            }
+            for (int j = 0; j < running; j++) {
+                limiter.release(10, true);
+            }
+        }
+        assertEquals(4, limiter.getLimit());
+    }
+}
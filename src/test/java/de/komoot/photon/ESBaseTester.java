@@ -30,7 +30,7 @@ public class ESBaseTester {
 
     private Server server;
 
-    GeometryFactory FACTORY = new GeometryFactory(new PrecisionModel(), 4326);
+    protected GeometryFactory FACTORY = new GeometryFactory(new PrecisionModel(), 4326);
 
     protected Client client;
 
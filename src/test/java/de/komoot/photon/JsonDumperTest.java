@@ -0,0 +1,55 @@
+package de.komoot.photon;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class JsonDumperTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testChunksAndManifest() throws Exception {
+        String prefix = new File(folder.getRoot(), "dump").getPath();
+        JsonDumper dumper = new JsonDumper(prefix, "en,de", true, 1, 3);
+        int count = 2500;
+        for (int i = 0; i < count; i++) {
+            dumper.add(PhotonDoc.create(i, "N", i, ImmutableMap.of("name", "place " + i)));
+        }
+        dumper.finish();
+        assertEquals(count, dumper.getAcknowledgedCount());
+
+        JSONObject manifest = new JSONObject(FileUtils.readFileToString(new File(prefix + JsonDumper.MANIFEST_SUFFIX), StandardCharsets.UTF_8));
+        assertEquals(count, manifest.getLong("documents"));
+        assertEquals("gzip", manifest.getString("compression"));
+
+        JSONArray chunks = manifest.getJSONArray("chunks");
+        assertEquals(1, chunks.length());
+        assertEquals("dump-00000.ndjson.gz", chunks.getJSONObject(0).getString("file"));
+
+        List<String> lines;
+        try (InputStream in = new GZIPInputStream(new FileInputStream(new File(folder.getRoot(), "dump-00000.ndjson.gz")))) {
+            lines = IOUtils.readLines(in, StandardCharsets.UTF_8);
+        }
+        assertEquals(2 * count, lines.size());
+        // documents keep the order they were added in, across batches serialized by different threads
+        for (int i = 0; i < count; i++) {
+            assertEquals(String.valueOf(i), new JSONObject(lines.get(2 * i)).getJSONObject("index").getString("_id"));
+            assertEquals(i, new JSONObject(lines.get(2 * i + 1)).getLong(Constants.OSM_ID));
+        }
+    }
+}
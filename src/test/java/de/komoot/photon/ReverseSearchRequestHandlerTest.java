@@ -10,8 +10,8 @@ import de.komoot.photon.query.*;
 import de.komoot.photon.searcher.ReverseRequestHandler;
 import de.komoot.photon.searcher.ReverseRequestHandlerFactory;
 import de.komoot.photon.searcher.SimpleReverseRequestHandler;
-import de.komoot.photon.utils.ConvertToGeoJson;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.search.SearchHit;
 import org.hamcrest.core.IsEqual;
 import org.json.JSONObject;
 import org.junit.Assert;
@@ -21,6 +21,12 @@ import spark.Request;
 import spark.Response;
 import spark.RouteImpl;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
@@ -45,18 +51,25 @@ public class ReverseSearchRequestHandlerTest {
     }
 
     @Test
-    public void testHandle() throws BadRequestException {
+    public void testHandle() throws Exception {
         Client client = Mockito.mock(Client.class);
         ReverseSearchRequestHandler reverseSearchRequestHandlerUnderTest = new ReverseSearchRequestHandler("any", client, "en,fr");
         ReverseRequestFactory mockReverseRequestFactory = Mockito.mock(ReverseRequestFactory.class);
         Request mockWebRequest = Mockito.mock(Request.class);
         ReflectionTestUtil.setFieldValue(reverseSearchRequestHandlerUnderTest, ReverseSearchRequestHandler.class, "reverseRequestFactory", mockReverseRequestFactory);
 
+        Mockito.when(mockReverseRequestFactory.<ReverseRequest>createWithBody(mockWebRequest)).thenReturn(Mockito.mock(ReverseRequest.class));
+
         SimpleReverseRequestHandler mockSimpleReverseRequestHandler = new SimpleReverseRequestHandler(null) {
             @Override
             public List<JSONObject> handle(ReverseRequest photonRequest) {
                 return new ArrayList<>();
             }
+
+            @Override
+            public List<SearchHit> handleHits(ReverseRequest photonRequest) {
+                return new ArrayList<>();
+            }
         };
         ReverseRequestHandlerFactory mockReverseRequestHandlerFactory = new ReverseRequestHandlerFactory(null) {
             @Override
@@ -66,11 +79,31 @@ public class ReverseSearchRequestHandlerTest {
         };
         ReflectionTestUtil.setFieldValue(reverseSearchRequestHandlerUnderTest, ReverseSearchRequestHandler.class, "requestHandlerFactory", mockReverseRequestHandlerFactory);
 
-        ConvertToGeoJson mockConvertToGeoJson = Mockito.mock(ConvertToGeoJson.class);
-        ReflectionTestUtil.setFieldValue(reverseSearchRequestHandlerUnderTest, "geoJsonConverter", mockConvertToGeoJson);
-        String expectedResultString = "{\"test\":\"success\"}";
-        Mockito.when(mockConvertToGeoJson.doForward(Mockito.any(ArrayList.class))).thenReturn(new JSONObject(expectedResultString));
-        String finalResult = reverseSearchRequestHandlerUnderTest.handle(mockWebRequest, Mockito.mock(Response.class));
-        Assert.assertThat(finalResult, IsEqual.equalTo(expectedResultString));
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        String finalResult = reverseSearchRequestHandlerUnderTest.handle(mockWebRequest, mockResponse(body));
+        Assert.assertThat(finalResult, IsEqual.equalTo(""));
+        Assert.assertThat(body.toString("UTF-8"), IsEqual.equalTo("{\"type\":\"FeatureCollection\",\"features\":[]}"));
+    }
+
+    private static Response mockResponse(final ByteArrayOutputStream body) throws IOException {
+        HttpServletResponse servletResponse = Mockito.mock(HttpServletResponse.class);
+        Mockito.when(servletResponse.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        });
+        Response response = Mockito.mock(Response.class);
+        Mockito.when(response.raw()).thenReturn(servletResponse);
+        return response;
     }
 }
\ No newline at end of file
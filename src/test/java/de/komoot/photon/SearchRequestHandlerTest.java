@@ -2,15 +2,14 @@ package de.komoot.photon;
 
 import com.google.common.collect.ImmutableSet;
 import com.vividsolutions.jts.geom.Point;
-import de.komoot.photon.query.BadRequestException;
 import de.komoot.photon.query.LanguageChecker;
 import de.komoot.photon.query.PhotonRequest;
 import de.komoot.photon.query.PhotonRequestFactory;
 import de.komoot.photon.searcher.PhotonRequestHandler;
 import de.komoot.photon.searcher.PhotonRequestHandlerFactory;
 import de.komoot.photon.searcher.SimplePhotonRequestHandler;
-import de.komoot.photon.utils.ConvertToGeoJson;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.search.SearchHit;
 import org.hamcrest.core.IsEqual;
 import org.json.JSONObject;
 import org.junit.Assert;
@@ -21,6 +20,12 @@ import spark.Request;
 import spark.Response;
 import spark.RouteImpl;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
@@ -41,17 +46,24 @@ public class SearchRequestHandlerTest {
     }
 
     @Test
-    public void testHandle() throws BadRequestException {
+    public void testHandle() throws Exception {
         Client client = Mockito.mock(Client.class);
         SearchRequestHandler searchRequestHandlerUnderTest = new SearchRequestHandler("any", client, "en,fr");
         PhotonRequestFactory mockPhotonRequestFactory = Mockito.mock(PhotonRequestFactory.class);
         Request mockWebRequest = Mockito.mock(Request.class);
         ReflectionTestUtil.setFieldValue(searchRequestHandlerUnderTest, SearchRequestHandler.class, "photonRequestFactory", mockPhotonRequestFactory);
 
+        Mockito.when(mockPhotonRequestFactory.<PhotonRequest>createWithBody(mockWebRequest)).thenReturn(Mockito.mock(PhotonRequest.class));
+
         SimplePhotonRequestHandler mockSimplePhotonRequestHandler = new SimplePhotonRequestHandler(null) {
             public List<JSONObject> handle(PhotonRequest photonRequest) {
                 return new ArrayList<>();
             }
+
+            @Override
+            public List<SearchHit> handleHits(PhotonRequest photonRequest) {
+                return new ArrayList<>();
+            }
         };
         PhotonRequestHandlerFactory mockPhotonRequestHandlerFactory = new PhotonRequestHandlerFactory(null) {
             @Override
@@ -61,11 +73,31 @@ public class SearchRequestHandlerTest {
         };
         ReflectionTestUtil.setFieldValue(searchRequestHandlerUnderTest, SearchRequestHandler.class, "requestHandlerFactory", mockPhotonRequestHandlerFactory);
 
-        ConvertToGeoJson mockConvertToGeoJson = Mockito.mock(ConvertToGeoJson.class);
-        ReflectionTestUtil.setFieldValue(searchRequestHandlerUnderTest, "geoJsonConverter", mockConvertToGeoJson);
-        String expectedResultString = "{\"test\":\"success\"}";
-        Mockito.when(mockConvertToGeoJson.doForward(Mockito.any(ArrayList.class))).thenReturn(new JSONObject(expectedResultString));
-        String finalResult = searchRequestHandlerUnderTest.handle(mockWebRequest, Mockito.mock(Response.class));
-        Assert.assertThat(finalResult, IsEqual.equalTo(expectedResultString));
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        String finalResult = searchRequestHandlerUnderTest.handle(mockWebRequest, mockResponse(body));
+        Assert.assertThat(finalResult, IsEqual.equalTo(""));
+        Assert.assertThat(body.toString("UTF-8"), IsEqual.equalTo("{\"type\":\"FeatureCollection\",\"features\":[]}"));
+    }
+
+    private static Response mockResponse(final ByteArrayOutputStream body) throws IOException {
+        HttpServletResponse servletResponse = Mockito.mock(HttpServletResponse.class);
+        Mockito.when(servletResponse.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        });
+        Response response = Mockito.mock(Response.class);
+        Mockito.when(response.raw()).thenReturn(servletResponse);
+        return response;
     }
 }
\ No newline at end of file
@@ -0,0 +1,43 @@
+package de.komoot.photon.elasticsearch;
+
+import com.google.common.collect.ImmutableMap;
+import com.vividsolutions.jts.geom.Coordinate;
+import de.komoot.photon.ESBaseTester;
+import de.komoot.photon.PhotonDoc;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ImporterTest extends ESBaseTester {
+    private Settings getSettings() {
+        return getClient().admin().indices().prepareGetSettings(Server.INDEX_ALIAS).get().getIndexToSettings().valuesIt().next();
+    }
+
+    private PhotonDoc createDoc(long placeId) {
+        return new PhotonDoc(placeId, "N", placeId, "amenity", "cafe", ImmutableMap.of("name", "cafe"), null, null, null, 0, 0.1, null,
+                FACTORY.createPoint(new Coordinate(13.4, 52.5)), 0, 30);
+    }
+
+    @Test
+    public void testResumedImportRestoresSavedServingSettings() {
+        getClient().admin().indices().prepareUpdateSettings(Server.INDEX_ALIAS)
+                .setSettings(Settings.builder().put("index.refresh_interval", "30s").put("index.number_of_replicas", "0")).get();
+
+        Importer importer = new Importer(getClient(), "en");
+        Map<String, String> servingSettings = importer.suspendServingSettings();
+        importer.add(createDoc(1000));
+        assertEquals("-1", getSettings().get("index.refresh_interval"));
+        // the import is interrupted here, the index stays suspended
+
+        Importer resumed = new Importer(getClient(), "en");
+        resumed.setServingSettings(servingSettings);
+        resumed.add(createDoc(1001));
+        resumed.finish();
+
+        assertEquals("30s", getSettings().get("index.refresh_interval"));
+        assertEquals("0", getSettings().get("index.number_of_replicas"));
+    }
+}
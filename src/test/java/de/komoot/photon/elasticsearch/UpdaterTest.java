@@ -0,0 +1,93 @@
+package de.komoot.photon.elasticsearch;
+
+import com.google.common.collect.ImmutableMap;
+import com.vividsolutions.jts.geom.Coordinate;
+import de.komoot.photon.ESBaseTester;
+import de.komoot.photon.PhotonDoc;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class UpdaterTest extends ESBaseTester {
+
+    private PhotonDoc createDoc(long placeId, Map<String, String> name) {
+        return new PhotonDoc(placeId, "N", placeId, "tourism", "museum", name, null, null, null, 0, 0.5, null,
+                FACTORY.createPoint(new Coordinate(13.4, 52.5)), 0, 30);
+    }
+
+    @Test
+    public void testUpdateAddressReplacesLanguages() {
+        Updater updater = new Updater(getClient(), "en,de");
+        PhotonDoc doc = createDoc(1000, ImmutableMap.of("name", "Museum"));
+        doc.setCity(ImmutableMap.of("name", "Berlin", "name:de", "Berlin (de)"));
+        doc.setStreet(ImmutableMap.of("name", "Hauptstraße"));
+        updater.create(doc);
+        updater.finish();
+        refresh();
+
+        doc = createDoc(1000, ImmutableMap.of("name", "Museum"));
+        doc.setCity(ImmutableMap.of("name", "Berlin"));
+        updater.updateAddress(doc);
+        updater.finish();
+        refresh();
+
+        Map<String, Object> source = getClient().prepareGet(Server.INDEX_ALIAS, "place", "1000").get().getSource();
+        assertEquals(ImmutableMap.of("default", "Berlin"), source.get("city"));
+        assertNull(source.get("street"));
+        assertEquals(ImmutableMap.of("default", "Museum"), source.get("name"));
+    }
+
+    @Test
+    public void testGetRenamedPlaceIds() {
+        Updater updater = new Updater(getClient(), "en,de");
+        updater.create(createDoc(1000, ImmutableMap.of("name", "Museum")));
+        updater.create(createDoc(1001, ImmutableMap.of("name", "Museum", "name:de", "Museum (de)")));
+        updater.finish();
+        refresh();
+
+        assertEquals(Collections.singleton(1001L), updater.getRenamedPlaceIds(Arrays.asList(
+                createDoc(1000, ImmutableMap.of("name", "Museum")),
+                createDoc(1001, ImmutableMap.of("name", "Museum")))));
+        // not indexed
+        assertEquals(Collections.singleton(1002L), updater.getRenamedPlaceIds(Collections.singletonList(createDoc(1002, ImmutableMap.of("name", "Museum")))));
+    }
+
+    @Test
+    public void testDocumentWithHouseNumber() {
+        Updater updater = new Updater(getClient(), "en");
+        PhotonDoc doc = createDoc(1000, ImmutableMap.of("name", "Museum"));
+        doc.setHouseNumber("12");
+        doc.setCity(ImmutableMap.of("name", "Berlin"));
+        updater.create(doc);
+        updater.finish();
+
+        assertEquals(Collections.emptySet(), updater.getRenamedPlaceIds(Collections.singletonList(doc)));
+
+        doc.setCity(ImmutableMap.of("name", "Potsdam"));
+        updater.updateAddress(doc);
+        // a document missing from the index is skipped
+        updater.updateAddress(createDoc(1001, ImmutableMap.of("name", "Museum")));
+        updater.finish();
+
+        assertEquals(0, updater.getFailedCount());
+        Map<String, Object> source = getClient().prepareGet(Server.INDEX_ALIAS, "place", "1000").get().getSource();
+        assertEquals(ImmutableMap.of("default", "Potsdam"), source.get("city"));
+        assertEquals("12", source.get("housenumber"));
+    }
+
+    @Test
+    public void testChangesAreSearchableAfterFinish() {
+        Updater updater = new Updater(getClient(), "en");
+        updater.create(createDoc(1000, ImmutableMap.of("name", "Museum")));
+        updater.finish();
+
+        // no explicit refresh
+        assertEquals(1, getClient().prepareSearch(Server.INDEX_ALIAS).setQuery(QueryBuilders.idsQuery().addIds("1000")).get().getHits().getTotalHits());
+    }
+}
@@ -0,0 +1,51 @@
+package de.komoot.photon.nominatim;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import de.komoot.photon.nominatim.model.AddressRow;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class AddressCacheTest {
+
+    private AddressRow createRow(long placeId) {
+        return new AddressRow(placeId, ImmutableMap.of("name", "place " + placeId), "place", "city", 16, null, null, null, "N", placeId);
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        AddressCache cache = new AddressCache(10);
+        AddressRow row = createRow(1);
+        cache.put(row);
+
+        Map<Long, AddressRow> present = cache.getAllPresent(ImmutableList.of(1L, 2L));
+        assertEquals(1, present.size());
+        assertSame(row, present.get(1L));
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    public void testInvalidate() {
+        AddressCache cache = new AddressCache(10);
+        cache.put(createRow(1));
+        cache.invalidate(1);
+
+        assertEquals(0, cache.getAllPresent(ImmutableList.of(1L)).size());
+    }
+
+    @Test
+    public void testSizeBound() {
+        AddressCache cache = new AddressCache(2);
+        for (long i = 0; i < 5; i++) {
+            cache.put(createRow(i));
+        }
+
+        assertEquals(2, cache.getAllPresent(ImmutableList.of(0L, 1L, 2L, 3L, 4L)).size());
+        assertEquals(3, cache.stats().evictionCount());
+    }
+}
@@ -0,0 +1,64 @@
+package de.komoot.photon.nominatim;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ImportCheckpointTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testResumeOpenRanges() throws Exception {
+        File file = new File(folder.getRoot(), ImportCheckpoint.FILE_NAME);
+        NominatimConnector.SectorRange first = new NominatimConnector.SectorRange(NominatimConnector.PLACEX, 0, 99);
+        NominatimConnector.SectorRange second = new NominatimConnector.SectorRange(NominatimConnector.PLACEX, 100, 199);
+        NominatimConnector.SectorRange osmline = new NominatimConnector.SectorRange(NominatimConnector.OSMLINE, 0, 199);
+
+        ImportCheckpoint checkpoint = new ImportCheckpoint(file, "photon_20261018000000", "en,de", "");
+        checkpoint.setRanges(ImmutableList.of(first, second, osmline));
+        checkpoint.markDone(second);
+
+        ImportCheckpoint loaded = ImportCheckpoint.load(file);
+        assertEquals("photon_20261018000000", loaded.getIndexName());
+        assertTrue(loaded.matches("en,de", ""));
+        assertFalse(loaded.matches("en", ""));
+        assertFalse(loaded.matches("en,de", "de"));
+        assertEquals(3, loaded.getRangeCount());
+        List<NominatimConnector.SectorRange> open = loaded.getOpenRanges();
+        assertEquals(ImmutableList.of(first, osmline), open);
+
+        loaded.markDone(first);
+        loaded.markDone(osmline);
+        assertTrue(ImportCheckpoint.load(file).getOpenRanges().isEmpty());
+
+        loaded.delete();
+        assertNull(ImportCheckpoint.load(file));
+    }
+
+    @Test
+    public void testServingSettingsSurviveResume() throws Exception {
+        File file = new File(folder.getRoot(), ImportCheckpoint.FILE_NAME);
+        ImportCheckpoint checkpoint = new ImportCheckpoint(file, "photon_20261018000000", "en", "");
+        checkpoint.setServingSettings(ImmutableMap.of("index.refresh_interval", "30s", "index.number_of_replicas", "2"));
+        checkpoint.setRanges(ImmutableList.of(new NominatimConnector.SectorRange(NominatimConnector.PLACEX, 0, 99)));
+
+        assertEquals(ImmutableMap.of("index.refresh_interval", "30s", "index.number_of_replicas", "2"),
+                ImportCheckpoint.load(file).getServingSettings());
+    }
+
+    @Test
+    public void testCheckpointWithoutServingSettings() throws Exception {
+        File file = new File(folder.getRoot(), ImportCheckpoint.FILE_NAME);
+        new ImportCheckpoint(file, "photon_20261018000000", "en", "").save();
+
+        assertNull(ImportCheckpoint.load(file).getServingSettings());
+    }
+}
@@ -1,8 +1,18 @@
 package de.komoot.photon.nominatim;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import de.komoot.photon.PhotonDoc;
+import de.komoot.photon.nominatim.model.AddressRow;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class NominatimConnectorTest {
 
@@ -12,4 +22,74 @@ public class NominatimConnectorTest {
         assertEquals("'uk'", NominatimConnector.convertCountryCode("uk".split(",")));
         assertEquals("'uk','de'", NominatimConnector.convertCountryCode("uk,de".split(",")));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCompletePlace() {
+        PhotonDoc doc = PhotonDoc.create(1, "N", 1, ImmutableMap.of("name", "Museum"));
+        Map<String, String> street = ImmutableMap.of("name", "Hauptstraße");
+        Map<String, String> suburb = ImmutableMap.of("name", "Mitte");
+        Map<String, String> city = ImmutableMap.of("name", "Berlin");
+        Map<String, String> state = ImmutableMap.of("name", "Brandenburg");
+
+        NominatimConnector.completePlace(doc, ImmutableList.of(
+                new AddressRow(2, street, "highway", "residential", 26, null, "10117", null, "W", 2),
+                new AddressRow(3, suburb, "place", "suburb", 20, null, null, null, "N", 3),
+                new AddressRow(4, city, "place", "city", 16, null, null, null, "N", 4),
+                new AddressRow(5, state, "boundary", "administrative", 8, 4, null, null, "R", 5)));
+
+        assertEquals(street, doc.getStreet());
+        assertEquals(city, doc.getCity());
+        assertEquals(state, doc.getState());
+        assertEquals("10117", doc.getPostcode());
+        assertEquals(1, doc.getContext().size());
+        assertTrue(doc.getContext().contains(suburb));
+    }
+
+    @Test
+    public void testAddressPlaceIdsOfStreetAndPoiOnIt() {
+        PhotonDoc street = new PhotonDoc(10, "W", 10, "highway", "residential", ImmutableMap.of("name", "Hauptstraße"), null, null, null, 5, 0.1, null, null, 0, 26);
+        PhotonDoc poi = new PhotonDoc(20, "N", 20, "tourism", "museum", ImmutableMap.of("name", "Museum"), null, null, null, 10, 0.1, null, null, 0, 30);
+        Map<Long, List<Long>> addressLines = ImmutableMap.<Long, List<Long>>of(10L, ImmutableList.of(3L, 4L));
+
+        List<List<Long>> addressPlaceIds = NominatimConnector.getAddressPlaceIds(Arrays.asList(street, poi), addressLines);
+
+        // the street is not its own street
+        assertEquals(Arrays.asList(3L, 4L), addressPlaceIds.get(0));
+        assertEquals(Arrays.asList(10L, 3L, 4L), addressPlaceIds.get(1));
+        assertEquals(ImmutableList.of(3L, 4L), addressLines.get(10L));
+    }
+
+    @Test
+    public void testSplitSectors() {
+        List<NominatimConnector.SectorRange> ranges = NominatimConnector.splitSectors("placex", 10, 109, 4);
+        assertEquals(4, ranges.size());
+        assertEquals(10, ranges.get(0).first);
+        assertEquals(34, ranges.get(0).last);
+        assertEquals(35, ranges.get(1).first);
+        assertEquals(109, ranges.get(3).last);
+
+        // never more ranges than sectors
+        ranges = NominatimConnector.splitSectors("placex", 5, 6, 8);
+        assertEquals(2, ranges.size());
+        assertEquals(5, ranges.get(0).last);
+        assertEquals(6, ranges.get(1).first);
+
+        ranges = NominatimConnector.splitSectors("placex", Integer.MIN_VALUE, Integer.MAX_VALUE, 1);
+        assertEquals(Integer.MIN_VALUE, ranges.get(0).first);
+        assertEquals(Integer.MAX_VALUE, ranges.get(0).last);
+    }
+
+    @Test
+    public void testPlanSectorRangesIncludesNullSectors() {
+        List<NominatimConnector.SectorRange> ranges = NominatimConnector.planSectorRanges("placex", 10, 109, 4);
+        assertEquals(4, ranges.size());
+        assertEquals(Integer.MAX_VALUE, ranges.get(3).last);
+        assertTrue(ranges.get(3).includesNullSectors());
+        assertFalse(ranges.get(2).includesNullSectors());
+
+        // no row has a sector
+        ranges = NominatimConnector.planSectorRanges("placex", null, null, 4);
+        assertEquals(1, ranges.size());
+        assertTrue(ranges.get(0).includesNullSectors());
+    }
+}
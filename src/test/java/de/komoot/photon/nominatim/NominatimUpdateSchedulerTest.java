@@ -0,0 +1,32 @@
+package de.komoot.photon.nominatim;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class NominatimUpdateSchedulerTest {
+    @Test
+    public void testSkippedUpdateDoesNotCountAsRun() {
+        NominatimUpdater updater = Mockito.mock(NominatimUpdater.class);
+        NominatimUpdateScheduler scheduler = new NominatimUpdateScheduler(updater);
+
+        Mockito.when(updater.getLastImportDate()).thenReturn(new Date(1000000));
+        Mockito.when(updater.update()).thenReturn(42);
+        scheduler.runUpdate();
+
+        // the change feed holds the lock while newer data was imported
+        Mockito.when(updater.getLastImportDate()).thenReturn(new Date(2000000));
+        Mockito.when(updater.update()).thenReturn(NominatimUpdater.SKIPPED);
+        scheduler.runUpdate();
+
+        JSONObject status = scheduler.getStatus();
+        assertEquals(1, status.getLong("runs"));
+        assertEquals(42, status.getInt("last_places"));
+        assertEquals(1000, status.getLong("data_date"));
+        scheduler.shutdown();
+    }
+}
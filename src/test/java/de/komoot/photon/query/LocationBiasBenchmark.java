@@ -0,0 +1,112 @@
+package de.komoot.photon.query;
+
+import com.google.common.collect.ImmutableMap;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Point;
+import de.komoot.photon.ESBaseTester;
+import de.komoot.photon.PhotonDoc;
+import de.komoot.photon.elasticsearch.Importer;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * compares the speed and the results of the script and the native location bias, run it with -Dtest=LocationBiasBenchmark, the
+ * number of places with -Dbenchmark.places
+ */
+@Slf4j
+public class LocationBiasBenchmark extends ESBaseTester {
+    private static final int QUERIES = 200;
+    private static final int ROUNDS = 3;
+    private static final int RESULTS = 10;
+
+    private void importPlaces(int places) {
+        Importer importer = new Importer(getClient(), "en");
+        Random random = new Random(42);
+        for (int i = 0; i < places; i++) {
+            // central europe
+            Point location = FACTORY.createPoint(new Coordinate(5 + 15 * random.nextDouble(), 45 + 10 * random.nextDouble()));
+            importer.add(new PhotonDoc(1000 + i, "W", 1000 + i, "highway", "residential", ImmutableMap.of("name", "Kirchstraße"), null, null, null, 0,
+                    random.nextDouble() * 0.5, null, location, 0, 26));
+        }
+        importer.finish();
+        refresh();
+    }
+
+    private List<Point> createBiases(Random random) {
+        List<Point> biases = new ArrayList<>(QUERIES);
+        for (int i = 0; i < QUERIES; i++) {
+            biases.add(FACTORY.createPoint(new Coordinate(5 + 15 * random.nextDouble(), 45 + 10 * random.nextDouble())));
+        }
+        return biases;
+    }
+
+    private List<String> search(ScoringMode scoringMode, Point bias) {
+        SearchResponse response = getClient().prepareSearch("photon")
+                .setQuery(PhotonQueryBuilder.builder("Kirchstraße", "en", scoringMode).withLocationBias(bias, 1.6).buildQuery())
+                .setSize(RESULTS).get();
+        List<String> ids = new ArrayList<>(RESULTS);
+        for (SearchHit hit : response.getHits()) {
+            ids.add(hit.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * runs the queries of both modes alternately to spread caching and garbage collection evenly
+     *
+     * @return milliseconds per query of the script and the native bias
+     */
+    private double[] run(List<Point> biases) {
+        long[] nanos = new long[2];
+        ScoringMode[] modes = {ScoringMode.SCRIPT, ScoringMode.NATIVE};
+        for (int i = 0; i < biases.size(); i++) {
+            for (int j = 0; j < modes.length; j++) {
+                // alternate which mode goes first
+                int mode = (i + j) % modes.length;
+                long start = System.nanoTime();
+                search(modes[mode], biases.get(i));
+                nanos[mode] += System.nanoTime() - start;
+            }
+        }
+        return new double[]{nanos[0] / 1e6 / biases.size(), nanos[1] / 1e6 / biases.size()};
+    }
+
+    @Test
+    public void benchmark() {
+        int places = Integer.getInteger("benchmark.places", 100000);
+        importPlaces(places);
+        Random random = new Random(7);
+
+        // warm up
+        run(createBiases(random));
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            double[] millis = run(createBiases(random));
+            log.info(String.format("round %d, %d places: script %.1f ms/query, native %.1f ms/query", round, places, millis[0], millis[1]));
+        }
+
+        // share of the script's top results the native bias finds as well
+        int top1 = 0;
+        int overlap = 0;
+        for (Point bias : createBiases(random)) {
+            List<String> script = search(ScoringMode.SCRIPT, bias);
+            List<String> nativeIds = search(ScoringMode.NATIVE, bias);
+            if (script.get(0).equals(nativeIds.get(0))) {
+                top1++;
+            }
+            Set<String> common = new HashSet<>(script);
+            common.retainAll(nativeIds);
+            overlap += common.size();
+        }
+        log.info(String.format("same first result %.0f%%, top %d overlap %.0f%%", 100.0 * top1 / QUERIES, RESULTS,
+                100.0 * overlap / (QUERIES * RESULTS)));
+    }
+}
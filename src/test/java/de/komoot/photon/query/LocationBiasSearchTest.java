@@ -0,0 +1,73 @@
+package de.komoot.photon.query;
+
+import com.google.common.collect.ImmutableMap;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Point;
+import de.komoot.photon.ESBaseTester;
+import de.komoot.photon.PhotonDoc;
+import de.komoot.photon.elasticsearch.Importer;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * compares the ranking of the native location bias with the ranking of the painless script, they agree for nearby places only
+ */
+public class LocationBiasSearchTest extends ESBaseTester {
+    private static final double[] DISTANCES_KM = {1, 5, 12, 25, 50, 100, 200, 400, 800};
+    private static final double[] IMPORTANCES = {0.8, 0.6, 0.4, 0.3, 0.05, 0.01, 0.2, 0.5, 0.1};
+
+    private final Point bias = FACTORY.createPoint(new Coordinate(13.4, 52.5));
+
+    private void importPlaces() {
+        Importer importer = new Importer(getClient(), "en");
+        for (int i = 0; i < DISTANCES_KM.length; i++) {
+            // due north, one degree of latitude is about 111.2km
+            Point location = FACTORY.createPoint(new Coordinate(bias.getX(), bias.getY() + DISTANCES_KM[i] / 111.2));
+            importer.add(new PhotonDoc(1000 + i, "W", 1000 + i, "highway", "residential", ImmutableMap.of("name", "Kirchstraße"), null, null, null, 0,
+                    IMPORTANCES[i], null, location, 0, 26));
+        }
+        importer.finish();
+        refresh();
+    }
+
+    private List<String> search(ScoringMode scoringMode, double scale) {
+        SearchResponse response = getClient().prepareSearch("photon")
+                .setQuery(PhotonQueryBuilder.builder("Kirchstraße", "en", scoringMode).withLocationBias(bias, scale).buildQuery())
+                .setSize(DISTANCES_KM.length).get();
+        List<String> ids = new ArrayList<>();
+        for (SearchHit hit : response.getHits()) {
+            ids.add(hit.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testNativeRankingMatchesScriptNearby() {
+        importPlaces();
+
+        // the places up to 25km away
+        List<String> expected = search(ScoringMode.SCRIPT, 1.6).subList(0, 4);
+        assertEquals(Arrays.asList("1000", "1001", "1002", "1003"), expected);
+        assertEquals(expected, search(ScoringMode.NATIVE, 1.6).subList(0, 4));
+        assertEquals(expected, search(ScoringMode.NATIVE, 5).subList(0, 4));
+    }
+
+    @Test
+    public void testNativeRanksDistantPlacesByImportance() {
+        importPlaces();
+
+        // the script still prefers the place 50km away, the native bias has faded and prefers the more important place 800km away
+        List<String> script = search(ScoringMode.SCRIPT, 1.6);
+        assertTrue(script.indexOf("1004") < script.indexOf("1008"));
+        List<String> nativeIds = search(ScoringMode.NATIVE, 1.6);
+        assertTrue(nativeIds.indexOf("1008") < nativeIds.indexOf("1004"));
+    }
+}
@@ -1,10 +1,15 @@
 package de.komoot.photon.query;
 
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
 import de.komoot.photon.ReflectionTestUtil;
 import org.junit.Test;
 
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by sachi_000 on 2/28/2015.
@@ -39,4 +44,16 @@ public class PhotonQueryBuilderTest {
         assertThat(actualLimit, equalTo(5));
     }
 
+    @Test
+    public void testNativeScoringWithoutScripts() throws Exception {
+        Point bias = new GeometryFactory().createPoint(new Coordinate(13.4, 52.5));
+        String scripted = PhotonQueryBuilder.builder("berlin", "en").withLocationBias(bias, 1.6).buildQuery().toString();
+        String nativeQuery = PhotonQueryBuilder.builder("berlin", "en", ScoringMode.NATIVE).withLocationBias(bias, 1.6).buildQuery().toString();
+
+        assertTrue(scripted.contains("painless"));
+        assertFalse(nativeQuery.contains("painless"));
+        assertTrue(nativeQuery.contains("field_value_factor"));
+        assertTrue(nativeQuery.contains("\"exp\""));
+    }
+
 }
\ No newline at end of file
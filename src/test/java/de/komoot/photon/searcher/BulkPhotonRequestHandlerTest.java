@@ -0,0 +1,79 @@
+package de.komoot.photon.searcher;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Point;
+import de.komoot.photon.ESBaseTester;
+import de.komoot.photon.query.PhotonRequest;
+import de.komoot.photon.query.ScoringMode;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * compares the results of bulk requests with the results of single requests
+ */
+public class BulkPhotonRequestHandlerTest extends ESBaseTester {
+    // strict match, lenient match only, nothing at all
+    private static final String[] QUERIES = {"berlin", "berlin xyzzy", "berlim", "nowhere"};
+    private static final int[] LIMITS = {1, 3, 15};
+
+    private List<PhotonRequest> createRequests(int count) {
+        List<PhotonRequest> requests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Point bias = i % 2 == 0 ? null : FACTORY.createPoint(new Coordinate(13.39 + 0.001 * (i % 7), 52.52));
+            requests.add(new PhotonRequest(QUERIES[i % QUERIES.length], LIMITS[i % LIMITS.length], null, bias, null, 1.6, i % 3 == 0 ? "de" : "en"));
+        }
+        return requests;
+    }
+
+    private static List<String> toStrings(List<JSONObject> results) {
+        List<String> strings = new ArrayList<>(results.size());
+        for (JSONObject result : results) {
+            strings.add(result.toString());
+        }
+        return strings;
+    }
+
+    private void assertBulkResultsEqualSingleResults(ScoringMode scoringMode) {
+        ElasticsearchSearcher searcher = new BaseElasticsearchSearcher(getClient());
+        // more requests than fit into one multi search
+        List<PhotonRequest> requests = createRequests(BaseElasticsearchSearcher.MULTI_SEARCH_CHUNK_SIZE + 50);
+
+        List<List<JSONObject>> bulkResults = new BulkPhotonRequestHandler(searcher, scoringMode).handle(requests);
+
+        assertEquals(requests.size(), bulkResults.size());
+        PhotonRequestHandlerFactory factory = new PhotonRequestHandlerFactory(searcher, null, scoringMode);
+        for (int i = 0; i < requests.size(); i++) {
+            PhotonRequest request = requests.get(i);
+            List<JSONObject> expected = factory.createHandler(request).handle(request);
+            assertEquals("request " + i + " for " + request.getQuery(), toStrings(expected), toStrings(bulkResults.get(i)));
+        }
+    }
+
+    @Test
+    public void testBulkResultsEqualSingleResults() {
+        assertBulkResultsEqualSingleResults(ScoringMode.SCRIPT);
+    }
+
+    @Test
+    public void testBulkResultsEqualSingleResultsWithNativeScoring() {
+        assertBulkResultsEqualSingleResults(ScoringMode.NATIVE);
+    }
+
+    @Test
+    public void testLenientFallback() {
+        ElasticsearchSearcher searcher = new BaseElasticsearchSearcher(getClient());
+        PhotonRequest request = new PhotonRequest("berlin xyzzy", 15, null, null, null, 1.6, "en");
+        AbstractPhotonRequestHandler<PhotonRequest> handler = new PhotonRequestHandlerFactory(searcher).createSearchHandler(request);
+        assertEquals(0, searcher.search(handler.buildQuery(request).buildQuery(), 15).getHits().getTotalHits());
+
+        List<List<JSONObject>> bulkResults = new BulkPhotonRequestHandler(searcher).handle(createRequests(QUERIES.length));
+        assertTrue(bulkResults.get(1).size() > 0);
+        assertEquals(0, bulkResults.get(3).size());
+    }
+}
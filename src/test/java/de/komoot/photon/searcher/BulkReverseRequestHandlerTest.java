@@ -0,0 +1,118 @@
+package de.komoot.photon.searcher;
+
+import com.google.common.collect.ImmutableMap;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Point;
+import de.komoot.photon.ESBaseTester;
+import de.komoot.photon.PhotonDoc;
+import de.komoot.photon.elasticsearch.Importer;
+import de.komoot.photon.query.ReverseQueryBuilder;
+import de.komoot.photon.query.ReverseRequest;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * compares the results of bulk reverse requests with the results of single reverse requests
+ */
+public class BulkReverseRequestHandlerTest extends ESBaseTester {
+    // places of the grid cell 13.40-13.41, 52.50-52.51
+    private static final int PLACES = BulkReverseRequestHandler.CELL_CANDIDATES + 100;
+
+    private ReverseElasticsearchSearcher searcher;
+
+    @Before
+    public void importPlaces() {
+        Importer importer = new Importer(getClient(), "en");
+        // randomly spread places leave no two of them at the same distance from a point
+        Random random = new Random(42);
+        for (int i = 0; i < PLACES; i++) {
+            Point location = FACTORY.createPoint(new Coordinate(13.4 + 0.01 * random.nextDouble(), 52.5 + 0.01 * random.nextDouble()));
+            importer.add(new PhotonDoc(100 + i, "N", 100 + i, "amenity", "bench", ImmutableMap.of("name", "bench " + i), null, null, null, 0,
+                    0.1, null, location, 0, 30));
+        }
+        importer.finish();
+        refresh();
+        searcher = new ReverseElasticsearchSearcher(getClient());
+    }
+
+    private ReverseRequest request(double lon, double lat, double radius, int limit, boolean locationDistanceSort) {
+        return new ReverseRequest(FACTORY.createPoint(new Coordinate(lon, lat)), null, "en", radius, null, limit, locationDistanceSort);
+    }
+
+    private static List<String> toStrings(List<JSONObject> results) {
+        List<String> strings = new ArrayList<>(results.size());
+        for (JSONObject result : results) {
+            strings.add(result.toString());
+        }
+        return strings;
+    }
+
+    /**
+     * @param singleRequests requests the bulk results are compared with, the bulk requests rounded
+     */
+    private void assertSameResults(List<ReverseRequest> bulkRequests, List<ReverseRequest> singleRequests) {
+        List<List<JSONObject>> bulkResults = new BulkReverseRequestHandler(searcher, BulkReverseRequestHandler.DEFAULT_PRECISION,
+                BulkReverseRequestHandler.DEFAULT_CELL_SIZE).handle(bulkRequests);
+
+        assertEquals(bulkRequests.size(), bulkResults.size());
+        ReverseRequestHandlerFactory factory = new ReverseRequestHandlerFactory(searcher);
+        for (int i = 0; i < singleRequests.size(); i++) {
+            ReverseRequest request = singleRequests.get(i);
+            List<JSONObject> expected = factory.createHandler(request).handle(request);
+            assertEquals("request " + i, toStrings(expected), toStrings(bulkResults.get(i)));
+        }
+    }
+
+    private void assertSameResults(List<ReverseRequest> requests) {
+        assertSameResults(requests, requests);
+    }
+
+    @Test
+    public void testCellWithMoreThanCandidates() {
+        List<ReverseRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(request(13.401 + 0.002 * i, 52.501 + 0.0015 * i, 1, 20, true));
+            // a large radius and limit need more places than found for the cell
+            requests.add(request(13.402 + 0.002 * i, 52.508 - 0.0015 * i, 5, 300, true));
+        }
+        Point center = FACTORY.createPoint(new Coordinate(13.405, 52.505));
+        assertTrue(searcher.search(ReverseQueryBuilder.builder(center, 1.0, null).buildQuery(), 1, center, true).getHits().getTotalHits()
+                > BulkReverseRequestHandler.CELL_CANDIDATES);
+        assertSameResults(requests);
+    }
+
+    @Test
+    public void testPointsNearCellEdges() {
+        // pairs of points on both sides of the cell edges at 13.41 and 52.51
+        assertSameResults(Arrays.asList(
+                request(13.409999, 52.505, 0.2, 10, true), request(13.409990, 52.506, 0.2, 10, true),
+                request(13.410001, 52.505, 0.2, 10, true), request(13.410010, 52.506, 0.2, 10, true),
+                request(13.405, 52.509999, 0.2, 10, true), request(13.406, 52.509990, 0.2, 10, true),
+                request(13.405, 52.510001, 0.2, 10, true), request(13.406, 52.510010, 0.2, 10, true)));
+    }
+
+    @Test
+    public void testDuplicateRoundedPoints() {
+        List<ReverseRequest> bulkRequests = Arrays.asList(
+                request(13.4050001, 52.5050001, 0.5, 5, true), request(13.4050004, 52.5049996, 0.5, 5, true),
+                request(13.405, 52.505, 0.5, 5, true), request(13.407, 52.503, 0.5, 5, true));
+        ReverseRequest rounded = request(13.405, 52.505, 0.5, 5, true);
+        assertSameResults(bulkRequests, Arrays.asList(rounded, rounded, rounded, bulkRequests.get(3)));
+    }
+
+    @Test
+    public void testSortedByScore() {
+        assertSameResults(Arrays.asList(
+                request(13.404, 52.504, 0.3, 5, false), request(13.405, 52.505, 0.3, 5, false),
+                request(13.404, 52.504, 0.3, 5, true)));
+    }
+}
@@ -0,0 +1,50 @@
+package de.komoot.photon.searcher;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import de.komoot.photon.query.PhotonRequest;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SearchResultCacheTest {
+
+    private static PhotonRequest request(String query, double lon, double lat) {
+        return new PhotonRequest(query, 15, null, null, new Coordinate(lon, lat), 1.6, "en");
+    }
+
+    @Test
+    public void testNormalizedKey() {
+        SearchResultCache cache = new SearchResultCache(100, 3);
+        assertEquals(cache.getKey(request("Berlin  Mitte", 13.40001, 52.52002)), cache.getKey(request(" berlin mitte", 13.40004, 52.51998)));
+        assertNotEquals(cache.getKey(request("berlin", 13.4, 52.52)), cache.getKey(request("berlin", 13.41, 52.52)));
+        assertNotEquals(cache.getKey(request("berlin", 13.4, 52.52)), cache.getKey(new PhotonRequest("berlin", 15, null, null, null, 1.6, "en")));
+    }
+
+    @Test
+    public void testHitsAndInvalidation() {
+        SearchResultCache cache = new SearchResultCache(100, 3);
+        final AtomicInteger searches = new AtomicInteger();
+        Callable<List<JSONObject>> search = new Callable<List<JSONObject>>() {
+            @Override
+            public List<JSONObject> call() {
+                searches.incrementAndGet();
+                return Collections.singletonList(new JSONObject().put("name", "Berlin"));
+            }
+        };
+
+        cache.get(request("Berlin", 13.4, 52.52), search);
+        assertEquals("Berlin", cache.get(request("berlin", 13.4, 52.52), search).get(0).getString("name"));
+        assertEquals(1, searches.get());
+        assertEquals(1, cache.getStats().getLong("hits"));
+
+        cache.invalidateAll();
+        cache.get(request("berlin", 13.4, 52.52), search);
+        assertEquals(2, searches.get());
+    }
+}
@@ -3,8 +3,11 @@ package de.komoot.photon.searcher;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.search.SearchHit;
 import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Test;
@@ -35,6 +38,24 @@ public class StreetDupesRemoverTest {
         Assert.assertEquals(2, dedupedResults.size());
     }
     
+    @Test
+    public void testDeduplicatesStreetHits() {
+        StreetDupesRemover streetDupesRemover = new StreetDupesRemover("en");
+        List<SearchHit> allHits = new ArrayList<>();
+        allHits.add(createDummyHit("99999", "Main Street", "highway", "Unclassified"));
+        allHits.add(createDummyHit("99999", "Main Street", "highway", "bus_stop"));
+        allHits.add(createDummyHit("99999", "Main Street", "highway", "Unclassified"));
+
+        List<SearchHit> dedupedHits = streetDupesRemover.removeDuplicateHits(allHits);
+        Assert.assertEquals(Arrays.asList(allHits.get(0), allHits.get(1)), dedupedHits);
+    }
+
+    private SearchHit createDummyHit(String postCode, String name, String osmKey, String osmValue) {
+        return new SearchHit(1).sourceRef(new BytesArray(new JSONObject()
+                        .put(Constants.POSTCODE, postCode).put(Constants.NAME, new JSONObject().put("default", name))
+                        .put(Constants.OSM_KEY, osmKey).put(Constants.OSM_VALUE, osmValue).toString()));
+    }
+
     private JSONObject createDummyResult(String postCode, String name, String osmKey,
                     String osmValue) {
         return new JSONObject().put(Constants.PROPERTIES, new JSONObject()
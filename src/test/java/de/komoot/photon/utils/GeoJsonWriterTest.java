@@ -0,0 +1,72 @@
+package de.komoot.photon.utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.search.SearchHit;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class GeoJsonWriterTest {
+    private static SearchHit createHit(String source) {
+        return new SearchHit(1).sourceRef(new BytesArray(source));
+    }
+
+    private static List<SearchHit> createHits() {
+        return Arrays.asList(
+                createHit("{\"osm_id\":42,\"osm_type\":\"W\",\"osm_key\":\"highway\",\"osm_value\":\"residential\",\"postcode\":\"10117\","
+                        + "\"coordinate\":{\"lat\":52.51,\"lon\":13.38},\"name\":{\"default\":\"Unter den Linden\",\"fr\":\"Sous les tilleuls\"},"
+                        + "\"city\":{\"default\":\"Berlin\"},\"country\":{\"default\":\"Deutschland\",\"en\":\"Germany\"},"
+                        + "\"extent\":{\"type\":\"envelope\",\"coordinates\":[[13.37,52.52],[13.4,52.5]]}}"),
+                createHit("{\"osm_id\":7,\"osm_type\":\"N\",\"osm_key\":\"amenity\",\"osm_value\":\"cafe\",\"housenumber\":\"3a\","
+                        + "\"coordinate\":{\"lat\":35.68,\"lon\":139.76},\"name\":{\"default\":\"喫茶店 \\\"Ü\\\" 🍵\"},"
+                        + "\"street\":{\"default\":\"Straße\\n\\\\1\"}}"),
+                createHit("{\"osm_id\":8,\"osm_key\":\"place\",\"osm_value\":\"city\"}"));
+    }
+
+    private static JsonElement expected(List<SearchHit> hits, String language) {
+        return new JsonParser().parse(new ConvertToGeoJson().convert(new ConvertToJson(language).convertHits(hits)).toString());
+    }
+
+    private static JsonElement writeHits(List<SearchHit> hits, String language) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new GeoJsonWriter().writeHits(hits, language, out);
+        return new JsonParser().parse(new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testWriteHitsLikeConverted() throws Exception {
+        List<SearchHit> hits = createHits();
+        for (String language : Arrays.asList("en", "fr", "default")) {
+            Assert.assertEquals(expected(hits, language), writeHits(hits, language));
+        }
+    }
+
+    @Test
+    public void testWriteHitsLargerThanBuffer() throws Exception {
+        List<SearchHit> hits = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            hits.addAll(createHits());
+        }
+        JsonElement written = writeHits(hits, "en");
+        Assert.assertEquals(600, written.getAsJsonObject().getAsJsonArray("features").size());
+        Assert.assertEquals(expected(hits, "en"), written);
+    }
+
+    @Test
+    public void testWriteReusesWriter() throws Exception {
+        GeoJsonWriter writer = new GeoJsonWriter();
+        List<SearchHit> hits = createHits();
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writer.write(new ConvertToJson("en").convertHits(hits), out);
+            Assert.assertEquals(expected(hits, "en"), new JsonParser().parse(new String(out.toByteArray(), StandardCharsets.UTF_8)));
+        }
+    }
+}